@@ -0,0 +1,46 @@
+package image;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+/**
+ * A package-private class of the package image.
+ * Pixels in one segment of native memory, of any size, that is freed by closing its scope. It needs the
+ * jdk.incubator.foreign module of Java 17 to compile and run, and is loaded by NativePixels only when the
+ * module is present.
+ */
+class SegmentPixels extends NativePixels {
+    private final ResourceScope scope;
+    private final MemorySegment segment;
+
+    SegmentPixels(int width, int height) {
+        /*shared, as the pixels are read by the threads of the matcher*/
+        scope = ResourceScope.newSharedScope();
+        segment = MemorySegment.allocateNative((long) width * height * Integer.BYTES, Integer.BYTES, scope);
+    }
+
+    @Override
+    int get(long index) {
+        return MemoryAccess.getIntAtIndex(segment, index);
+    }
+
+    @Override
+    void get(long index, int[] dest, int destOffset, int length) {
+        long bytes = (long) length * Integer.BYTES;
+        MemorySegment.ofArray(dest).asSlice((long) destOffset * Integer.BYTES, bytes)
+                .copyFrom(segment.asSlice(index * Integer.BYTES, bytes));
+    }
+
+    @Override
+    void put(long index, int[] src, int srcOffset, int length) {
+        long bytes = (long) length * Integer.BYTES;
+        segment.asSlice(index * Integer.BYTES, bytes)
+                .copyFrom(MemorySegment.ofArray(src).asSlice((long) srcOffset * Integer.BYTES, bytes));
+    }
+
+    @Override
+    void free() {
+        scope.close();
+    }
+}
@@ -0,0 +1,91 @@
+package ascii_art.img_to_char;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A package-private class of the package ascii_art.img_to_char.
+ * Computes the grey values of as many pixels at a time as fit in the widest vector of the platform, and
+ * sums whole vectors of them into tiles that are as wide as a vector or wider. Tiles that are narrower than
+ * a vector are summed from the grey values of the vector one lane at a time.
+ * Needs the jdk.incubator.vector module, see GreyKernel.create.
+ */
+class VectorGreyKernel extends GreyKernel {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    /*grey values that can be summed in an int without overflow*/
+    private static final int MAX_GREYS_IN_INT = Integer.MAX_VALUE / (255 * GREY_SCALE);
+
+    /**
+     * @return grey values of the pixels of a vector that begins at x
+     */
+    private static IntVector greys(int[] rowPixels, int x) {
+        IntVector rgb = IntVector.fromArray(SPECIES, rowPixels, x);
+        IntVector red = rgb.lanewise(VectorOperators.LSHR, 16).and(0xff);
+        IntVector green = rgb.lanewise(VectorOperators.LSHR, 8).and(0xff);
+        IntVector blue = rgb.and(0xff);
+        return red.mul(RED_FACTOR).add(green.mul(GREEN_FACTOR)).add(blue.mul(BLUE_FACTOR));
+    }
+
+    @Override
+    void addTileSums(int[] rowPixels, int numTiles, int edgeSize, long[] sums, int sumsOffset) {
+        int lanes = SPECIES.length();
+        if (edgeSize % lanes == 0) {
+            /*the lanes are added up before their sum could overflow*/
+            int maxVectors = Math.max(1, MAX_GREYS_IN_INT / lanes);
+            for (int tile = 0, x = 0; tile < numTiles; tile++) {
+                long sum = 0;
+                for (int end = x + edgeSize; x < end; ) {
+                    int vectorsEnd = Math.min(end, x + maxVectors * lanes);
+                    IntVector vectorSum = IntVector.zero(SPECIES);
+                    for (; x < vectorsEnd; x += lanes) {
+                        vectorSum = vectorSum.add(greys(rowPixels, x));
+                    }
+                    sum += vectorSum.reduceLanes(VectorOperators.ADD);
+                }
+                sums[sumsOffset + tile] += sum;
+            }
+            return;
+        }
+        int width = numTiles * edgeSize;
+        int[] greys = new int[lanes];
+        int x = 0;
+        int tile = 0;
+        if (lanes % edgeSize == 0) {
+            /*whole tiles in each vector: the lanes of each tile are added up in its first lane, by adding to
+            each lane the lane after it, then the lane 2 after it, and so on*/
+            for (; x + lanes <= width; x += lanes) {
+                IntVector tileSums = greys(rowPixels, x);
+                for (int shift = 1; shift < edgeSize; shift <<= 1) {
+                    tileSums = tileSums.add(tileSums.slice(shift));
+                }
+                tileSums.intoArray(greys, 0);
+                for (int lane = 0; lane < lanes; lane += edgeSize) {
+                    sums[sumsOffset + tile++] += greys[lane];
+                }
+            }
+        }
+        /*the rest of the row, a vector of grey values at a time, tile after tile*/
+        long sum = 0;
+        int left = edgeSize;
+        for (; x < width; ) {
+            int length = Math.min(lanes, width - x);
+            if (length == lanes) {
+                greys(rowPixels, x).intoArray(greys, 0);
+            } else {
+                for (int lane = 0; lane < length; lane++) {
+                    greys[lane] = grey(rowPixels[x + lane]);
+                }
+            }
+            for (int lane = 0; lane < length; lane++) {
+                sum += greys[lane];
+                if (--left == 0) {
+                    sums[sumsOffset + tile++] += sum;
+                    sum = 0;
+                    left = edgeSize;
+                }
+            }
+            x += length;
+        }
+    }
+}
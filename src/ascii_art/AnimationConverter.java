@@ -0,0 +1,86 @@
+package ascii_art;
+
+import ascii_art.img_to_char.SequenceImgCharMatcher;
+import image.Image;
+import image.ImageSequence;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A package-private class of the package ascii_art.
+ * Converts the frames of an animation, an animated GIF or a directory of numbered frames, to a file of
+ * ascii art for each frame. The next frames are decoded while a frame is matched, and the tiles of a frame
+ * that did not change since the previous frame keep their chars, see SequenceImgCharMatcher.
+ */
+class AnimationConverter {
+    /*frames that are decoded ahead of the frame that is matched*/
+    private static final int FRAMES_AHEAD = 8;
+    private static final String FRAME_NAME = "frame_%04d.%s";
+    private static final double NANOS_IN_SECOND = 1e9;
+    private static final String SUMMARY_MSG = "Converted %d frames in %.2f s: %.1f frames/s, tiles: " +
+            "%.1f%% unchanged, %.1f%% kept by the threshold, %.1f%% matched";
+
+    private final int charsInRow;
+    private final Character[] charSet;
+    private final String format;
+    private final String outputDir;
+    private final String font;
+    private final double threshold;
+
+    /**
+     * constructor of AnimationConverter
+     *
+     * @param charsInRow number of chars in a row of each frame, as many as the frames allow at most
+     * @param charSet    the chars to assemble the frames from
+     * @param format     one of BatchConverter.FORMATS
+     * @param outputDir  directory to write a file to for each frame, named by the number of the frame
+     * @param font       font of the chars
+     * @param threshold  the largest change of the brightness of a tile that keeps its char, 0 to match every
+     *                   tile that changed
+     */
+    AnimationConverter(int charsInRow, Character[] charSet, String format, String outputDir, String font,
+                       double threshold) {
+        this.charsInRow = charsInRow;
+        this.charSet = charSet;
+        this.format = format;
+        this.outputDir = outputDir;
+        this.font = font;
+        this.threshold = threshold;
+    }
+
+    /**
+     * converts all the frames of the animation and prints a summary of the conversion
+     *
+     * @param path an animated image file or a directory of numbered frames
+     * @throws IOException if the animation or one of its frames can not be read
+     */
+    void convertAll(String path) throws IOException {
+        long start = System.nanoTime();
+        int numFrames = 0;
+        SequenceImgCharMatcher matcher = null;
+        int numCharsInRow = 0;
+        try (ImageSequence frames = ImageSequence.open(path, FRAMES_AHEAD)) {
+            for (Image frame = frames.next(); frame != null; frame = frames.next()) {
+                int newNumCharsInRow = ImageConverter.clampCharsInRow(frame.getWidth(), frame.getHeight(),
+                        charsInRow);
+                if (matcher == null || newNumCharsInRow != numCharsInRow) {
+                    numCharsInRow = newNumCharsInRow;
+                    matcher = new SequenceImgCharMatcher(numCharsInRow, charSet, font, threshold);
+                }
+                char[][] chars = matcher.chooseChars(frame);
+                String outputFile = new File(outputDir, String.format(FRAME_NAME, numFrames, format))
+                        .getPath();
+                BatchConverter.outputOf(outputFile, format, charSet, font, numCharsInRow).output(chars);
+                numFrames++;
+            }
+        }
+        double seconds = Math.max(System.nanoTime() - start, 1) / NANOS_IN_SECOND;
+        double numTiles = matcher == null ? 1 :
+                Math.max(1, matcher.getReusedTiles() + matcher.getKeptTiles() + matcher.getMatchedTiles());
+        System.out.println(String.format(SUMMARY_MSG, numFrames, seconds, numFrames / seconds,
+                matcher == null ? 0 : 100 * matcher.getReusedTiles() / numTiles,
+                matcher == null ? 0 : 100 * matcher.getKeptTiles() / numTiles,
+                matcher == null ? 0 : 100 * matcher.getMatchedTiles() / numTiles));
+    }
+}
@@ -0,0 +1,297 @@
+package ascii_art;
+
+import ascii_output.HtmlAsciiOutput;
+import ascii_output.StreamingAsciiOutput;
+import ascii_output.TextAsciiOutput;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+/**
+ * A package-private class of the package ascii_art.
+ * A local http service that converts images to ascii art. An image is posted to /convert as the body of
+ * the request, with the parameters charsInRow, chars and format (html or txt) in the query, and the
+ * response is the converted image. The rendered glyphs of the chars and the conversions are shared by all
+ * the requests, and /stats answers the statistics of the cache of the conversions.
+ * <p>
+ * Each request runs on a virtual thread when the JVM has them. At most as many requests as there are
+ * processors are converted at the same time, and at most maxQueued more wait for them; any more requests
+ * are turned away with 503 until the queue drains.
+ */
+class AsciiServer {
+    private static final String PATH = "/convert";
+    private static final String STATS_PATH = "/stats";
+    private static final String GET = "GET";
+    private static final String POST = "POST";
+    private static final String CHARS_IN_ROW_PARAM = "charsInRow";
+    private static final String CHARS_PARAM = "chars";
+    private static final String FORMAT_PARAM = "format";
+    private static final String HTML = "html";
+    private static final String TEXT = "txt";
+    private static final String GZIP = "gzip";
+    private static final int DEFAULT_CHARS_IN_ROW = 64;
+    private static final int MAX_IMAGE_BYTES = 32 << 20;
+    private static final String RETRY_AFTER_SECONDS = "1";
+    private static final int OK = 200;
+    private static final int BAD_REQUEST = 400;
+    private static final int METHOD_NOT_ALLOWED = 405;
+    private static final int PAYLOAD_TOO_LARGE = 413;
+    private static final int UNSUPPORTED_MEDIA_TYPE = 415;
+    private static final int INTERNAL_SERVER_ERROR = 500;
+    private static final int SERVICE_UNAVAILABLE = 503;
+    /*response code of an exchange whose response headers were not sent yet*/
+    private static final int NO_RESPONSE = -1;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String defaultChars;
+    private final String font;
+    private final ConversionCache cache;
+    /*requests that are converted or wait to be converted*/
+    private final Semaphore admitted;
+    /*requests that are converted*/
+    private final Semaphore converting;
+
+    /**
+     * constructor of AsciiServer, the server is not started
+     *
+     * @param port         port to listen on, on localhost
+     * @param maxQueued    most requests that wait for a conversion to end
+     * @param defaultChars the chars to assemble the images from when a request does not give them
+     * @param font         font of the chars
+     * @param cache        cache of the conversions, so that repeated images are converted once
+     * @throws IOException if the port can not be bound
+     */
+    AsciiServer(int port, int maxQueued, String defaultChars, String font, ConversionCache cache)
+            throws IOException {
+        int numWorkers = Runtime.getRuntime().availableProcessors();
+        this.defaultChars = defaultChars;
+        this.font = font;
+        this.cache = cache;
+        this.admitted = new Semaphore(numWorkers + maxQueued);
+        this.converting = new Semaphore(numWorkers);
+        this.executor = newThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext(PATH, this::handle);
+        server.createContext(STATS_PATH, this::handleStats);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * starts answering requests in the background
+     */
+    void start() {
+        server.start();
+    }
+
+    /**
+     * stops answering requests, after the requests that are handled end
+     *
+     * @param delaySeconds most seconds to wait for the requests that are handled
+     */
+    void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    /**
+     * @return an executor that runs each task on a new virtual thread, or on pooled platform threads if the
+     * JVM has no virtual threads
+     */
+    private static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * answers a request to convert an image
+     *
+     * @param exchange the request and its response
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals(POST)) {
+                exchange.sendResponseHeaders(METHOD_NOT_ALLOWED, -1);
+                return;
+            }
+            if (!admitted.tryAcquire()) {
+                exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+                exchange.sendResponseHeaders(SERVICE_UNAVAILABLE, -1);
+                return;
+            }
+            try {
+                convert(exchange);
+            } catch (RuntimeException e) {
+                Logger.getGlobal().severe("Failed to convert a request: " + e);
+                /*the client gets an error instead of a closed connection, unless the response was begun*/
+                if (exchange.getResponseCode() == NO_RESPONSE) {
+                    exchange.sendResponseHeaders(INTERNAL_SERVER_ERROR, -1);
+                }
+            } finally {
+                admitted.release();
+            }
+        }
+    }
+
+    /**
+     * answers the statistics of the cache of the conversions
+     *
+     * @param exchange the request and its response
+     */
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals(GET)) {
+                exchange.sendResponseHeaders(METHOD_NOT_ALLOWED, -1);
+                return;
+            }
+            byte[] stats = (cache.stats() + "\n").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(OK, stats.length);
+            exchange.getResponseBody().write(stats);
+        }
+    }
+
+    /**
+     * converts the image of an admitted request and sends it as the response
+     *
+     * @param exchange the request and its response
+     */
+    private void convert(HttpExchange exchange) throws IOException {
+        Map<String, String> params = queryParams(exchange.getRequestURI().getRawQuery());
+        int charsInRow;
+        try {
+            charsInRow = Integer.parseInt(params.getOrDefault(CHARS_IN_ROW_PARAM,
+                    String.valueOf(DEFAULT_CHARS_IN_ROW)));
+        } catch (NumberFormatException e) {
+            charsInRow = 0;
+        }
+        String format = params.getOrDefault(FORMAT_PARAM, HTML);
+        String chars = params.getOrDefault(CHARS_PARAM, defaultChars);
+        if (charsInRow < 1 || chars.isEmpty() || !(format.equals(HTML) || format.equals(TEXT))) {
+            exchange.sendResponseHeaders(BAD_REQUEST, -1);
+            return;
+        }
+        byte[] bytes = readBody(exchange.getRequestBody());
+        if (bytes == null) {
+            exchange.sendResponseHeaders(PAYLOAD_TOO_LARGE, -1);
+            return;
+        }
+        Character[] charSet = chars.chars().distinct().mapToObj(c -> (char) c).toArray(Character[]::new);
+        char[][] asciiArt;
+        converting.acquireUninterruptibly();
+        try {
+            asciiArt = cache.convert(bytes, charsInRow, charSet, font);
+        } catch (IOException e) {
+            exchange.sendResponseHeaders(UNSUPPORTED_MEDIA_TYPE, -1);
+            return;
+        } finally {
+            converting.release();
+        }
+        StreamingAsciiOutput output;
+        if (format.equals(HTML)) {
+            /*compressed if the client accepts it*/
+            boolean gzip = acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+            if (gzip) {
+                exchange.getResponseHeaders().set("Content-Encoding", GZIP);
+            }
+            exchange.sendResponseHeaders(OK, 0);
+            output = new HtmlAsciiOutput(Channels.newChannel(exchange.getResponseBody()), font, gzip);
+        } else {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(OK, 0);
+            output = new TextAsciiOutput(new OutputStreamWriter(exchange.getResponseBody(),
+                    StandardCharsets.UTF_8));
+        }
+        output.output(asciiArt);
+    }
+
+    /**
+     * @param acceptEncoding Accept-Encoding header of a request, or null
+     * @return true if the header accepts gzip with a quality above 0, by name or by "*" when gzip is not
+     * named
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean gzip = null;
+        Boolean any = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            boolean accepted = true;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            if (name.equals(GZIP)) {
+                gzip = accepted;
+            } else if (name.equals("*")) {
+                any = accepted;
+            }
+        }
+        return gzip != null ? gzip : any != null && any;
+    }
+
+    /**
+     * @param body body of a request
+     * @return the bytes of the body, or null if it has more than MAX_IMAGE_BYTES bytes
+     */
+    private static byte[] readBody(InputStream body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1 << 16];
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            if (bytes.size() + read > MAX_IMAGE_BYTES) {
+                return null;
+            }
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param rawQuery query of a request, still url encoded, or null
+     * @return the parameters of the query by their names
+     */
+    private static Map<String, String> queryParams(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String param : rawQuery.split("&")) {
+            int equals = param.indexOf('=');
+            if (equals > 0) {
+                params.put(URLDecoder.decode(param.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(param.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+}
@@ -0,0 +1,270 @@
+package ascii_art;
+
+import ascii_output.BinaryAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import ascii_output.StreamingAsciiOutput;
+import ascii_output.TextAsciiOutput;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A package-private class of the package ascii_art.
+ * Converts many image files to ascii art files without the shell. Each file is decoded, matched and
+ * written by one worker, and the workers convert different files at the same time, so that decoding one
+ * file overlaps matching and writing others.
+ */
+class BatchConverter {
+    static final String HTML = "html";
+    static final String GZIP_HTML = "html.gz";
+    static final String TEXT = "txt";
+    static final String GRID = "grid";
+    static final List<String> FORMATS = List.of(HTML, GZIP_HTML, TEXT, GRID);
+    private static final String GLOB_CHARS = "*?[{";
+    /*files waiting for a worker, for each worker. when the queue is full the file is converted by the
+    thread that submits them*/
+    private static final int QUEUED_FILES_PER_WORKER = 4;
+    private static final double NANOS_IN_MILLI = 1e6;
+    private static final double NANOS_IN_SECOND = 1e9;
+    private static final double BYTES_IN_MB = 1 << 20;
+    private static final String SUMMARY_MSG = "Converted %d of %d images in %.2f s: %.1f images/s, " +
+            "%.1f MB/s, p50 %.1f ms, p99 %.1f ms per image";
+
+    private final int charsInRow;
+    private final Character[] charSet;
+    private final String format;
+    private final String outputDir;
+    private final String font;
+    private final int numWorkers;
+    private final ConversionCache cache;
+
+    /**
+     * constructor of BatchConverter
+     *
+     * @param charsInRow number of chars in a row of each image, as many as the image allows at most
+     * @param charSet    the chars to assemble the images from
+     * @param format     HTML, GZIP_HTML, TEXT or GRID
+     * @param outputDir  directory to write a file to for each image, named as the image
+     * @param font       font of the chars
+     * @param numWorkers number of images to convert at the same time
+     * @param cache      cache of the conversions, so that repeated images are converted once
+     */
+    BatchConverter(int charsInRow, Character[] charSet, String format, String outputDir, String font,
+                   int numWorkers, ConversionCache cache) {
+        this.charsInRow = charsInRow;
+        this.charSet = charSet;
+        this.format = format;
+        this.outputDir = outputDir;
+        this.font = font;
+        this.numWorkers = numWorkers;
+        this.cache = cache;
+    }
+
+    /**
+     * @param directoryOrGlob a directory, or a glob of file names in a directory such as "thumbs/*.jpg", or
+     *                        a single file
+     * @return the files in the directory that match the glob, sorted by name
+     * @throws IOException if the directory can not be listed
+     */
+    static List<Path> listFiles(String directoryOrGlob) throws IOException {
+        Path path = Paths.get(directoryOrGlob);
+        if (Files.isRegularFile(path)) {
+            return List.of(path);
+        }
+        Path directory = path;
+        String glob = "*";
+        if (!Files.isDirectory(path) && directoryOrGlob.chars().anyMatch(c -> GLOB_CHARS.indexOf(c) >= 0)) {
+            directory = path.getParent() == null ? Paths.get(".") : path.getParent();
+            glob = path.getFileName().toString();
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, glob)) {
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry)) {
+                    files.add(entry);
+                }
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * converts the files and prints how fast they were converted. files that can not be converted are
+     * logged and skipped
+     *
+     * @param files image files to convert
+     */
+    void convertAll(List<Path> files) {
+        /*time of converting each file, -1 for the files that were not converted*/
+        long[] nanos = new long[files.size()];
+        Arrays.fill(nanos, -1);
+        AtomicInteger converted = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(numWorkers, numWorkers, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(numWorkers * QUEUED_FILES_PER_WORKER),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        Set<String> collidingNames = collidingNamesOf(files);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                int index = i;
+                workers.execute(() -> {
+                    long fileStart = System.nanoTime();
+                    if (convert(files.get(index), collidingNames)) {
+                        nanos[index] = System.nanoTime() - fileStart;
+                        converted.incrementAndGet();
+                        bytes.addAndGet(files.get(index).toFile().length());
+                    }
+                });
+            }
+        } finally {
+            /*the workers stop even if the thread that submits the files fails*/
+            workers.shutdown();
+        }
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / NANOS_IN_SECOND;
+        long[] convertedNanos = Arrays.stream(nanos).filter(n -> n >= 0).sorted().toArray();
+        System.out.println(String.format(SUMMARY_MSG, converted.get(), files.size(), seconds,
+                converted.get() / seconds, bytes.get() / BYTES_IN_MB / seconds,
+                percentile(convertedNanos, 50) / NANOS_IN_MILLI,
+                percentile(convertedNanos, 99) / NANOS_IN_MILLI));
+        System.out.println(cache.stats());
+    }
+
+    /**
+     * converts one image file to a file of the output format. a failure is logged, and it does not stop the
+     * conversion of the other files, even when it is converted by the thread that submits them
+     *
+     * @param file           image file
+     * @param collidingNames names of the images that more than one of the files has, see collidingNamesOf
+     * @return true if the image was converted, false if it could not be read or its output not written
+     */
+    private boolean convert(Path file, Set<String> collidingNames) {
+        char[][] chars;
+        try {
+            chars = cache.convert(Files.readAllBytes(file), charsInRow, charSet, font);
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to open image file " + file);
+            return false;
+        } catch (RuntimeException e) {
+            Logger.getGlobal().severe("Failed to convert image file " + file + ": " + e);
+            return false;
+        }
+        StreamingAsciiOutput output = outputOf(file, collidingNames);
+        try {
+            output.output(chars);
+        } catch (RuntimeException e) {
+            Logger.getGlobal().severe("Failed to write the conversion of " + file + ": " + e);
+            return false;
+        }
+        return !output.hasFailed();
+    }
+
+    /**
+     * @param files image files
+     * @return the names without extension that more than one of the files has, such as a.jpg and a.png,
+     * whose outputs would overwrite each other
+     */
+    private static Set<String> collidingNamesOf(List<Path> files) {
+        Set<String> names = new HashSet<>();
+        Set<String> colliding = new HashSet<>();
+        for (Path file : files) {
+            String name = nameOf(file);
+            if (!names.add(name)) {
+                colliding.add(name);
+            }
+        }
+        return colliding;
+    }
+
+    /**
+     * @return the file name of the image without its extension
+     */
+    private static String nameOf(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * @param file           image file
+     * @param collidingNames names of the images that more than one of the files has
+     * @return output to a file in the output directory named as the image, with the extension of the format.
+     * the extension of the image is kept in the name if another image has the same name
+     */
+    private StreamingAsciiOutput outputOf(Path file, Set<String> collidingNames) {
+        String name = nameOf(file);
+        if (collidingNames.contains(name)) {
+            name = file.getFileName().toString();
+        }
+        String outputFile = new File(outputDir, name + "." + format).getPath();
+        return outputOf(outputFile, format, charSet, font, charsInRow);
+    }
+
+    /**
+     * @param format  html, html.gz, txt or grid
+     * @param charSet the chars that the images are assembled from
+     * @return true if images of the char set can be written in the format: a grid file holds at most
+     * BinaryAsciiOutput.MAX_CHARS chars
+     */
+    static boolean canWrite(String format, Character[] charSet) {
+        return !format.equals(GRID) || charSet.length <= BinaryAsciiOutput.MAX_CHARS;
+    }
+
+    /**
+     * @param outputFile file to write to
+     * @param format     html, html.gz, txt or grid
+     * @param charSet    the chars that the images are assembled from
+     * @param font       font of the chars
+     * @param charsInRow number of chars in a row
+     * @return output to the file in the format
+     */
+    static StreamingAsciiOutput outputOf(String outputFile, String format, Character[] charSet,
+                                         String font, int charsInRow) {
+        if (format.equals(TEXT)) {
+            return new TextAsciiOutput(outputFile);
+        }
+        if (format.equals(GRID)) {
+            char[] chars = new char[charSet.length];
+            for (int i = 0; i < charSet.length; i++) {
+                chars[i] = charSet[i];
+            }
+            return new BinaryAsciiOutput(outputFile, chars, font, charsInRow, false);
+        }
+        return new HtmlAsciiOutput(outputFile, font, format.equals(GZIP_HTML));
+    }
+
+    /**
+     * @param sorted  sorted values
+     * @param percent percent of the values that are not larger than the percentile
+     * @return the percentile of the values, by the nearest rank, or 0 if there are no values
+     */
+    private static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+}
@@ -0,0 +1,236 @@
+package ascii_art;
+
+import ascii_output.BinaryAsciiGrid;
+import ascii_output.BinaryAsciiOutput;
+import image.ImageSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A package-private class of the package ascii_art.
+ * A cache of converted images by the content of the image file and the parameters of the conversion, so
+ * that an image that was converted before is neither decoded nor matched again. The least recently used
+ * conversions are kept in memory, and every conversion is also spilled to a directory, if there is one,
+ * whose least recently used files are deleted when they take more than a given number of bytes.
+ */
+class ConversionCache {
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final String SPILL_SUFFIX = ".grid";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String STATS_MSG = "Conversion cache: %d hits in memory, %d hits on disk, " +
+            "%d misses, hit rate %.1f%%, %d image bytes not decoded again";
+    private static final double PERCENT = 100;
+
+    private final GridCache memory;
+    /*directory of the spilled conversions, null to keep them only in memory*/
+    private final File spillDir;
+    private final long maxSpillBytes;
+    /*sizes of the spilled files by their keys, in access order*/
+    private final LinkedHashMap<String, Long> spilled;
+    private long spillBytes;
+    private long memoryHits;
+    private long diskHits;
+    private long misses;
+    private long bytesSaved;
+
+    /**
+     * constructor of ConversionCache. the conversions that are already in the directory are kept, the
+     * least recently modified ones first to be deleted, and the files of spills that never ended are deleted
+     *
+     * @param maxMemoryBytes most bytes of the conversions in memory
+     * @param spillDir       directory to spill the conversions to, created if needed, or null
+     * @param maxSpillBytes  most bytes of the spilled files
+     * @throws IOException if the directory can not be created
+     */
+    ConversionCache(long maxMemoryBytes, File spillDir, long maxSpillBytes) throws IOException {
+        this.memory = new GridCache(maxMemoryBytes);
+        this.spillDir = spillDir;
+        this.maxSpillBytes = maxSpillBytes;
+        this.spilled = new LinkedHashMap<>(16, 0.75f, true);
+        if (spillDir != null) {
+            Files.createDirectories(spillDir.toPath());
+            File[] temps = spillDir.listFiles((dir, name) -> name.endsWith(TEMP_SUFFIX));
+            if (temps != null) {
+                for (File temp : temps) {
+                    temp.delete();
+                }
+            }
+            File[] files = spillDir.listFiles((dir, name) -> name.endsWith(SPILL_SUFFIX));
+            if (files != null) {
+                Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+                for (File file : files) {
+                    String name = file.getName();
+                    spilled.put(name.substring(0, name.length() - SPILL_SUFFIX.length()), file.length());
+                    spillBytes += file.length();
+                }
+            }
+        }
+    }
+
+    /**
+     * converts the contents of an image file, or gives the conversion of the same contents and parameters
+     * from the cache
+     *
+     * @param imageBytes contents of an image file
+     * @param charsInRow number of chars in a row
+     * @param charSet    the chars to assemble the image from
+     * @param font       font of the chars
+     * @return 2 dimension array of the chars that assembles the image, shared and must not be modified
+     * @throws IOException if the contents are not an image that can be decoded
+     */
+    char[][] convert(byte[] imageBytes, int charsInRow, Character[] charSet, String font) throws IOException {
+        /*only the dimensions are read, so that requests that are clamped to the same resolution share it*/
+        ImageSource imageSource = ImageSource.fromBytes(imageBytes);
+        if (imageSource == null) {
+            throw new IOException("Unsupported image format");
+        }
+        int numCharsInRow = ImageConverter.clampCharsInRow(imageSource, charsInRow);
+        String key = keyOf(imageBytes, numCharsInRow, charSet, font);
+        char[][] chars = memory.get(key);
+        if (chars != null) {
+            hit(imageBytes, true);
+            return chars;
+        }
+        chars = readSpilled(key);
+        if (chars != null) {
+            hit(imageBytes, false);
+            memory.put(key, chars);
+            return chars;
+        }
+        /*the pixels are freed as soon as the image is converted*/
+        imageSource.setOffHeap(true);
+        try {
+            chars = ImageConverter.convert(imageSource, numCharsInRow, charSet, font);
+        } finally {
+            imageSource.close();
+        }
+        synchronized (this) {
+            misses++;
+        }
+        memory.put(key, chars);
+        spill(key, chars, numCharsInRow, charSet, font);
+        return chars;
+    }
+
+    /**
+     * @return the hits, misses and hit rate of the cache and the bytes of images that were not decoded
+     */
+    synchronized String stats() {
+        long lookups = memoryHits + diskHits + misses;
+        return String.format(STATS_MSG, memoryHits, diskHits, misses,
+                lookups == 0 ? 0 : (memoryHits + diskHits) * PERCENT / lookups, bytesSaved);
+    }
+
+    private synchronized void hit(byte[] imageBytes, boolean inMemory) {
+        if (inMemory) {
+            memoryHits++;
+        } else {
+            diskHits++;
+        }
+        bytesSaved += imageBytes.length;
+    }
+
+    /**
+     * @return hex of the hash of the image contents and of the parameters of the conversion, the chars in
+     * the order they were given in, as a tie in brightness is matched to the char that was given first
+     */
+    private static String keyOf(byte[] imageBytes, int charsInRow, Character[] charSet, String font) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            /*every java platform has SHA-256*/
+            throw new IllegalStateException(e);
+        }
+        digest.update(imageBytes);
+        String params = charsInRow + "|" + font + "|" + String.valueOf(charArrayOf(charSet));
+        digest.update(params.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return the spilled conversion of the key, or null if it is not spilled or can not be read
+     */
+    private char[][] readSpilled(String key) {
+        synchronized (this) {
+            if (spillDir == null || spilled.get(key) == null) {
+                return null;
+            }
+        }
+        File file = spillFile(key);
+        try {
+            char[][] chars = BinaryAsciiGrid.open(file.getPath()).toChars();
+            /*the file is the most recently used again after a restart too*/
+            file.setLastModified(System.currentTimeMillis());
+            return chars;
+        } catch (IOException e) {
+            /*deleted by another eviction meanwhile, or broken*/
+            return null;
+        }
+    }
+
+    /**
+     * writes the conversion of the key to the directory in the format of BinaryAsciiOutput, and deletes the
+     * least recently used files until the files fit. a conversion of a char set that is too large for the
+     * format is kept only in memory
+     */
+    private void spill(String key, char[][] chars, int charsInRow, Character[] charSet, String font) {
+        if (spillDir == null || charSet.length > BinaryAsciiOutput.MAX_CHARS) {
+            return;
+        }
+        File file = spillFile(key);
+        File temp = null;
+        try {
+            temp = Files.createTempFile(spillDir.toPath(), key, TEMP_SUFFIX).toFile();
+            BinaryAsciiOutput.write(temp.getPath(), chars, null, charArrayOf(charSet), font, charsInRow);
+            /*moved into place whole, so that a file is never read while it is written*/
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to spill a conversion to " + spillDir);
+            if (temp != null) {
+                temp.delete();
+            }
+            return;
+        }
+        synchronized (this) {
+            Long replaced = spilled.put(key, file.length());
+            spillBytes += file.length() - (replaced == null ? 0 : replaced);
+            Iterator<Map.Entry<String, Long>> eldest = spilled.entrySet().iterator();
+            while (spillBytes > maxSpillBytes && eldest.hasNext()) {
+                Map.Entry<String, Long> entry = eldest.next();
+                spillFile(entry.getKey()).delete();
+                spillBytes -= entry.getValue();
+                eldest.remove();
+            }
+        }
+    }
+
+    private static char[] charArrayOf(Character[] charSet) {
+        char[] chars = new char[charSet.length];
+        for (int i = 0; i < charSet.length; i++) {
+            chars[i] = charSet[i];
+        }
+        return chars;
+    }
+
+    private File spillFile(String key) {
+        return new File(spillDir, key + SPILL_SUFFIX);
+    }
+}
@@ -1,23 +1,293 @@
 package ascii_art;
 
-import ascii_art.img_to_char.BrightnessImgCharMatcher;
 import ascii_art.img_to_char.CharRenderer;
-import image.Image;
+import ascii_art.img_to_char.StreamingImgCharMatcher;
+import ascii_output.BinaryAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import image.ImageBandReader;
+import image.ImageSource;
+import image.PixelCache;
 
-import java.util.Arrays;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.logging.Logger;
 
 public class Driver {
+    private static final String USAGE = "USAGE: java asciiArt <image file>\n" +
+            "       java asciiArt --stream <image file> <chars in row> <html file> [chars]\n" +
+            "       java asciiArt --batch <directory or glob> <chars in row> <html|html.gz|txt|grid>\n" +
+            "                         <output directory> [chars]\n" +
+            "       java asciiArt --serve <port> [chars]\n" +
+            "       java asciiArt --animate <gif or frame directory> <chars in row>\n" +
+            "                           <html|html.gz|txt|grid> <output directory> [chars]";
+    /*system property of a file to keep rendered glyphs in between runs*/
+    private static final String GLYPH_CACHE_PROPERTY = "ascii_art.glyphCache";
+    /*system property of the number of buckets of the lookup table of char brightnesses, a power of 2 or 0*/
+    private static final String LOOKUP_TABLE_SIZE_PROPERTY = "ascii_art.lookupTableSize";
+    /*system properties of a directory to keep decoded images in between runs, and of its bytes*/
+    private static final String PIXEL_CACHE_PROPERTY = "ascii_art.pixelCacheDir";
+    private static final String PIXEL_CACHE_BYTES_PROPERTY = "ascii_art.pixelCacheDirBytes";
+    /*system properties of the cache of the conversions of the batch mode and the server: bytes in memory,
+    a directory to spill them to, and bytes in the directory*/
+    private static final String CONVERSION_CACHE_BYTES_PROPERTY = "ascii_art.conversionCacheBytes";
+    private static final String CONVERSION_CACHE_DIR_PROPERTY = "ascii_art.conversionCacheDir";
+    private static final String CONVERSION_CACHE_DIR_BYTES_PROPERTY = "ascii_art.conversionCacheDirBytes";
+    /*system property of the largest change of the brightness of a tile of an animation that keeps its
+    char, 0 to convert each frame exactly as a still image*/
+    private static final String TILE_THRESHOLD_PROPERTY = "ascii_art.tileThreshold";
+    private static final double DEFAULT_TILE_THRESHOLD = 0.01;
+    private static final long DEFAULT_CONVERSION_CACHE_BYTES = 64L << 20;
+    private static final long DEFAULT_CONVERSION_CACHE_DIR_BYTES = 1L << 30;
+    private static final long DEFAULT_PIXEL_CACHE_BYTES = 1L << 30;
+    private static final String STREAM = "--stream";
+    private static final String BATCH = "--batch";
+    private static final String SERVE = "--serve";
+    private static final String ANIMATE = "--animate";
+    /*requests that the server lets wait for a conversion, beyond those that are converted*/
+    private static final int MAX_QUEUED_REQUESTS = 256;
+    private static final String DEFAULT_CHARS = "0123456789";
+    private static final String FONT = "Courier New";
+
     public static void main(String[] args) throws Exception {
-        if (args.length != 1) {
-            System.err.println("USAGE: java asciiArt ");
+        boolean stream = args.length >= 4 && args.length <= 5 && args[0].equals(STREAM);
+        boolean batch = args.length >= 5 && args.length <= 6 && args[0].equals(BATCH);
+        boolean serve = args.length >= 2 && args.length <= 3 && args[0].equals(SERVE);
+        boolean animate = args.length >= 5 && args.length <= 6 && args[0].equals(ANIMATE);
+        if (args.length != 1 && !stream && !batch && !serve && !animate) {
+            System.err.println(USAGE);
             return;
         }
-        Image img = Image.fromFile(args[0]);
-        if (img == null) {
-            Logger.getGlobal().severe("Failed to open image file " + args[0]);
+        String glyphCache = System.getProperty(GLYPH_CACHE_PROPERTY);
+        if (glyphCache != null) {
+            CharRenderer.loadCache(glyphCache);
+        }
+        if (stream) {
+            streamToHtml(args[1], args[2], args[3], args.length == 5 ? args[4] : DEFAULT_CHARS);
+        } else if (batch) {
+            convertBatch(args[1], args[2], args[3], args[4], args.length == 6 ? args[5] : DEFAULT_CHARS);
+        } else if (animate) {
+            animate(args[1], args[2], args[3], args[4], args.length == 6 ? args[5] : DEFAULT_CHARS);
+        } else if (serve) {
+            if (serve(args[1], args.length == 3 ? args[2] : DEFAULT_CHARS) && glyphCache != null) {
+                /*the server answers until the process is stopped, the glyphs it rendered are saved then*/
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> CharRenderer.saveCache(glyphCache)));
+            }
             return;
+        } else {
+            ImageSource imageSource = ImageSource.fromFile(args[0]);
+            if (imageSource == null) {
+                Logger.getGlobal().severe("Failed to open image file " + args[0]);
+                return;
+            }
+            /*the image of the shell is kept for the whole session, out of the way of the garbage collector*/
+            imageSource.setOffHeap(true);
+            String pixelCache = System.getProperty(PIXEL_CACHE_PROPERTY);
+            if (pixelCache != null) {
+                try {
+                    imageSource.setPixelCache(new PixelCache(new File(pixelCache),
+                            Long.getLong(PIXEL_CACHE_BYTES_PROPERTY, DEFAULT_PIXEL_CACHE_BYTES)));
+                } catch (IOException e) {
+                    Logger.getGlobal().severe("Failed to create the pixel cache directory " + pixelCache);
+                }
+            }
+            Shell shell = new Shell(imageSource);
+            String lookupTableSize = System.getProperty(LOOKUP_TABLE_SIZE_PROPERTY);
+            if (lookupTableSize != null) {
+                int size;
+                try {
+                    size = Integer.parseInt(lookupTableSize);
+                } catch (NumberFormatException e) {
+                    size = -1;
+                }
+                if (size < 0 || Integer.bitCount(size) > 1) {
+                    System.err.println(LOOKUP_TABLE_SIZE_PROPERTY + " must be 0 or a power of 2");
+                    imageSource.close();
+                    return;
+                }
+                shell.setLookupTableSize(size);
+            }
+            shell.run();
+            imageSource.close();
+        }
+        if (glyphCache != null) {
+            CharRenderer.saveCache(glyphCache);
         }
-        new Shell(img).run();
     }
-}
\ No newline at end of file
+
+    /**
+     * converts an image to an html file one row of chars at a time, without holding the whole image in
+     * memory
+     *
+     * @param imageFile  image file to convert
+     * @param charsInRow number of chars in a row, as a string
+     * @param htmlFile   html file to write to
+     * @param chars      the chars to assemble the image from
+     */
+    private static void streamToHtml(String imageFile, String charsInRow, String htmlFile, String chars) {
+        int numCharsInRow;
+        try {
+            numCharsInRow = Integer.parseInt(charsInRow);
+        } catch (NumberFormatException e) {
+            System.err.println(USAGE);
+            return;
+        }
+        Character[] charSet = charSetOf(chars);
+        try (ImageBandReader reader = ImageBandReader.fromFile(imageFile)) {
+            if (numCharsInRow < 1 || numCharsInRow > reader.getWidth()) {
+                System.err.println(USAGE);
+                return;
+            }
+            new StreamingImgCharMatcher(reader, FONT).chooseChars(numCharsInRow, charSet,
+                    new HtmlAsciiOutput(htmlFile, FONT));
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to open image file " + imageFile);
+        }
+    }
+
+    /**
+     * converts the images of a directory to files of the given format, several images at a time
+     *
+     * @param directoryOrGlob a directory, or a glob of image files in a directory
+     * @param charsInRow      number of chars in a row, as a string
+     * @param format          html, html.gz, txt or grid
+     * @param outputDir       directory to write the converted files to
+     * @param chars           the chars to assemble the images from
+     */
+    private static void convertBatch(String directoryOrGlob, String charsInRow, String format,
+                                     String outputDir, String chars) {
+        int numCharsInRow;
+        try {
+            numCharsInRow = Integer.parseInt(charsInRow);
+        } catch (NumberFormatException e) {
+            System.err.println(USAGE);
+            return;
+        }
+        if (numCharsInRow < 1 || !BatchConverter.FORMATS.contains(format)) {
+            System.err.println(USAGE);
+            return;
+        }
+        if (!BatchConverter.canWrite(format, charSetOf(chars))) {
+            System.err.println("A grid file holds at most " + BinaryAsciiOutput.MAX_CHARS + " chars");
+            return;
+        }
+        List<Path> files;
+        try {
+            files = BatchConverter.listFiles(directoryOrGlob);
+            Files.createDirectories(Paths.get(outputDir));
+        } catch (IOException | InvalidPathException e) {
+            Logger.getGlobal().severe("Failed to list " + directoryOrGlob + " or create " + outputDir);
+            return;
+        }
+        ConversionCache cache = createConversionCache();
+        if (cache == null) {
+            return;
+        }
+        new BatchConverter(numCharsInRow, charSetOf(chars), format, outputDir, FONT,
+                Runtime.getRuntime().availableProcessors(), cache).convertAll(files);
+    }
+
+    /**
+     * converts the frames of an animation to files of the given format, a file for each frame
+     *
+     * @param gifOrDirectory an animated image file, or a directory of frames numbered in their names
+     * @param charsInRow     number of chars in a row, as a string
+     * @param format         html, html.gz, txt or grid
+     * @param outputDir      directory to write the converted frames to
+     * @param chars          the chars to assemble the frames from
+     */
+    private static void animate(String gifOrDirectory, String charsInRow, String format, String outputDir,
+                                String chars) {
+        int numCharsInRow;
+        double threshold;
+        try {
+            numCharsInRow = Integer.parseInt(charsInRow);
+            threshold = Double.parseDouble(System.getProperty(TILE_THRESHOLD_PROPERTY,
+                    String.valueOf(DEFAULT_TILE_THRESHOLD)));
+        } catch (NumberFormatException e) {
+            System.err.println(USAGE);
+            return;
+        }
+        if (numCharsInRow < 1 || threshold < 0 || !BatchConverter.FORMATS.contains(format)) {
+            System.err.println(USAGE);
+            return;
+        }
+        if (!BatchConverter.canWrite(format, charSetOf(chars))) {
+            System.err.println("A grid file holds at most " + BinaryAsciiOutput.MAX_CHARS + " chars");
+            return;
+        }
+        try {
+            Files.createDirectories(Paths.get(outputDir));
+        } catch (IOException | InvalidPathException e) {
+            Logger.getGlobal().severe("Failed to create " + outputDir);
+            return;
+        }
+        try {
+            new AnimationConverter(numCharsInRow, charSetOf(chars), format, outputDir, FONT, threshold)
+                    .convertAll(gifOrDirectory);
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to read the animation " + gifOrDirectory + ": "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * answers conversion requests on localhost until the process is stopped
+     *
+     * @param port  port to listen on, as a string
+     * @param chars the chars to assemble the images from when a request does not give them
+     * @return true if the server was started
+     */
+    private static boolean serve(String port, String chars) {
+        int portNumber;
+        try {
+            portNumber = Integer.parseInt(port);
+        } catch (NumberFormatException e) {
+            System.err.println(USAGE);
+            return false;
+        }
+        ConversionCache cache = createConversionCache();
+        if (cache == null) {
+            return false;
+        }
+        AsciiServer server;
+        try {
+            server = new AsciiServer(portNumber, MAX_QUEUED_REQUESTS, chars, FONT, cache);
+        } catch (IOException | IllegalArgumentException e) {
+            Logger.getGlobal().severe("Failed to listen on port " + port);
+            return false;
+        }
+        server.start();
+        System.out.println("Listening on http://localhost:" + portNumber + "/convert");
+        return true;
+    }
+
+    /**
+     * @return the cache of the conversions that the system properties configure, or null if its directory
+     * can not be created
+     */
+    private static ConversionCache createConversionCache() {
+        String spillDir = System.getProperty(CONVERSION_CACHE_DIR_PROPERTY);
+        try {
+            return new ConversionCache(
+                    Long.getLong(CONVERSION_CACHE_BYTES_PROPERTY, DEFAULT_CONVERSION_CACHE_BYTES),
+                    spillDir == null ? null : new File(spillDir),
+                    Long.getLong(CONVERSION_CACHE_DIR_BYTES_PROPERTY, DEFAULT_CONVERSION_CACHE_DIR_BYTES));
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to create the conversion cache directory " + spillDir);
+            return null;
+        }
+    }
+
+    /**
+     * @param chars chars of a char set, possibly repeated
+     * @return each of the chars once
+     */
+    private static Character[] charSetOf(String chars) {
+        return chars.chars().distinct().mapToObj(c -> (char) c).toArray(Character[]::new);
+    }
+}
@@ -0,0 +1,104 @@
+package ascii_art;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A package-private class of the package ascii_art.
+ * A cache of 2D arrays of chars, that evicts the least recently used arrays when the arrays take more than
+ * a given number of bytes. The cached arrays are shared and must not be modified.
+ */
+class GridCache {
+    private final long maxBytes;
+    private final LinkedHashMap<String, char[][]> grids;
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * constructor of GridCache
+     *
+     * @param maxBytes the most bytes that the cached arrays may take
+     */
+    GridCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        /*in access order, so that the eldest array is the least recently used*/
+        this.grids = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @param grid 2D array of chars
+     * @return the number of bytes that the chars of the array take
+     */
+    static long sizeOf(char[][] grid) {
+        long size = 0;
+        for (char[] row : grid) {
+            size += (long) row.length * Character.BYTES;
+        }
+        return size;
+    }
+
+    /**
+     * @param key key of an array
+     * @return the array of the key, or null if it is not cached
+     */
+    synchronized char[][] get(String key) {
+        char[][] grid = grids.get(key);
+        if (grid == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return grid;
+    }
+
+    /**
+     * caches an array, evicting the least recently used arrays until they all fit. an array larger than
+     * the cache is not cached
+     *
+     * @param key  key of the array
+     * @param grid the array
+     */
+    synchronized void put(String key, char[][] grid) {
+        long size = sizeOf(grid);
+        if (size > maxBytes) {
+            return;
+        }
+        char[][] replaced = grids.put(key, grid);
+        bytes += size - (replaced == null ? 0 : sizeOf(replaced));
+        Iterator<Map.Entry<String, char[][]>> eldest = grids.entrySet().iterator();
+        while (bytes > maxBytes) {
+            bytes -= sizeOf(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return number of gets that found an array
+     */
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of gets that did not find an array
+     */
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of cached arrays
+     */
+    synchronized int size() {
+        return grids.size();
+    }
+
+    /**
+     * @return number of bytes that the cached arrays take
+     */
+    synchronized long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,58 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import image.Image;
+import image.ImageSource;
+
+import java.io.IOException;
+
+/**
+ * A package-private class of the package ascii_art.
+ * Converts a whole image to chars in one call, for the modes that convert many images one after the other
+ * or at the same time. The images are matched serially, as they are already converted in parallel.
+ */
+class ImageConverter {
+    /*pixels of the padded image along the edge of each char, at least, as in the shell*/
+    private static final int MIN_PIXELS_PER_CHAR = 2;
+
+    private ImageConverter() {
+    }
+
+    /**
+     * @param imageSource image to convert
+     * @param charsInRow  number of chars in a row
+     * @return the number of chars in a row that the image allows closest to charsInRow: as in the shell, a
+     * char is at least MIN_PIXELS_PER_CHAR pixels wide and the image is at least a row of chars
+     */
+    static int clampCharsInRow(ImageSource imageSource, int charsInRow) {
+        return clampCharsInRow(imageSource.getWidth(), imageSource.getHeight(), charsInRow);
+    }
+
+    /**
+     * @param width      width of the padded image
+     * @param height     height of the padded image
+     * @param charsInRow number of chars in a row that was asked for
+     * @return the number of chars in a row, between the width of the image divided by MIN_PIXELS_PER_CHAR
+     * and its ratio to its height, the bounds of the shell
+     */
+    static int clampCharsInRow(int width, int height, int charsInRow) {
+        return Math.max(Math.min(charsInRow, width / MIN_PIXELS_PER_CHAR), Math.max(1, width / height));
+    }
+
+    /**
+     * @param imageSource image to convert
+     * @param charsInRow  number of chars in a row, clamped by clampCharsInRow
+     * @param charSet     the chars to assemble the image from
+     * @param font        font of the chars
+     * @return 2 dimension array of the chars that assembles the image
+     * @throws IOException if the image can not be decoded
+     */
+    static char[][] convert(ImageSource imageSource, int charsInRow, Character[] charSet, String font)
+            throws IOException {
+        int numCharsInRow = clampCharsInRow(imageSource, charsInRow);
+        Image img = imageSource.forCharsInRow(numCharsInRow);
+        BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(img, font);
+        matcher.setParallelism(null, 0);
+        return matcher.chooseChars(numCharsInRow, charSet);
+    }
+}
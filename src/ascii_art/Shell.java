@@ -4,7 +4,9 @@ import ascii_art.img_to_char.BrightnessImgCharMatcher;
 import ascii_output.ConsoleAsciiOutput;
 import ascii_output.HtmlAsciiOutput;
 import image.Image;
+import image.ImageSource;
 
+import java.io.IOException;
 import java.util.*;
 
 public class Shell {
@@ -13,6 +15,7 @@ public class Shell {
     private static final String CURRENT_CHARS_NUM_MSG = "Width set to <%d>";
     private static final int INITIAL_CHARS_IN_ROW = 64;
     private static final String OUT_OF_RANGES_MSG = "Did not change due to exceeding boundaries";
+    private static final String LOAD_FAILURE_MSG = "Did not render due to failure in reading the image";
     private static final String FILE_NAME = "out.html";
     private static final String FONT = "Courier New";
     private static final char ZERO = '0';
@@ -24,6 +27,15 @@ public class Shell {
     private static final String CHARS = "chars";
     private static final String RENDER = "render";
     private static final String CONSOLE = "console";
+    private static final String CACHE = "cache";
+    private static final String COLOR = "color";
+    private static final String COLOR_ON_MSG = "Rendering in color";
+    private static final String COLOR_OFF_MSG = "Rendering in black";
+    private static final String CACHE_STATS_MSG = "Render cache: %d hits, %d misses, %d renders, %d bytes";
+    /*system property of the most bytes of renders to keep for rendering the same settings again*/
+    private static final String RENDER_CACHE_PROPERTY = "ascii_art.renderCacheBytes";
+    private static final long DEFAULT_RENDER_CACHE_BYTES = 64L << 20;
+    private static final char KEY_SEPARATOR = '|';
     private static final int RESIZE_FACTOR = 2;
     private static final String EXIT = "exit";
     private static final String RES = "res ";
@@ -39,12 +51,24 @@ public class Shell {
 
     private static final char HYPHEN = '-';
     private static final String SPACE_STR = " ";
+    private static final String LOOKUP_TABLE_MSG =
+            "Lookup table of <%d> buckets searches <%.2f%%> of brightnesses";
+    /*lookupTableSize of the matchers when it is not set*/
+    private static final int UNSET_LOOKUP_TABLE_SIZE = -1;
     private final Scanner scanner;
     private final int minCharsInRow;
     private final int maxCharsInRow;
     private int charsInRow;
-    private final Image img;
+    private final ImageSource imageSource;
     private final HashSet<Character> characters;
+    private int lookupTableSize;
+    /*kept for the whole session once the image is first rendered, updated on every add and remove*/
+    private BrightnessImgCharMatcher brightnessImgCharMatcher;
+    private final GridCache renderCache;
+    /*kept between renders, so that its buffers are reused*/
+    private final ConsoleAsciiOutput consoleOutput;
+    /*render to html with the average color of the image under each char*/
+    private boolean renderColors;
 
 
     /**
@@ -53,21 +77,43 @@ public class Shell {
      * @param img image to make grey and assembled by ascii values
      */
     public Shell(Image img) {
+        this(ImageSource.of(img));
+    }
+
+    /**
+     * constructor of the user input shell, the image is decoded in as much detail as the resolution needs
+     *
+     * @param imageSource image file to make grey and assembled by ascii values
+     */
+    public Shell(ImageSource imageSource) {
         /*given code*/
-        minCharsInRow = Math.max(1, img.getWidth() / img.getHeight());
-        maxCharsInRow = img.getWidth() / MIN_PIXELS_PER_CHAR;
+        minCharsInRow = Math.max(1, imageSource.getWidth() / imageSource.getHeight());
+        maxCharsInRow = imageSource.getWidth() / MIN_PIXELS_PER_CHAR;
         charsInRow = Math.max(Math.min(INITIAL_CHARS_IN_ROW, maxCharsInRow),
                 minCharsInRow);
         /*end of given code*/
         scanner = new Scanner(System.in);
-        this.img = img;
+        this.imageSource = imageSource;
         this.characters = new HashSet<>();
+        this.lookupTableSize = UNSET_LOOKUP_TABLE_SIZE;
+        this.consoleOutput = new ConsoleAsciiOutput();
+        this.renderCache = new GridCache(Long.getLong(RENDER_CACHE_PROPERTY, DEFAULT_RENDER_CACHE_BYTES));
         /*initialize the characters to be 0-9 as requested*/
         for (char c = ZERO; c <= NINE; c++) {
             characters.add(c);
         }
     }
 
+    /**
+     * sets the size of the lookup table of the brightnesses of the chars. after each render, the part of
+     * the brightnesses that the table does not hold is printed, for choosing the size
+     *
+     * @param lookupTableSize number of buckets, a power of 2, or 0 to always search
+     */
+    public void setLookupTableSize(int lookupTableSize) {
+        this.lookupTableSize = lookupTableSize;
+    }
+
     /**
      * this method add char c if add is true and remove char c if remove is true
      *
@@ -78,8 +124,14 @@ public class Shell {
     private void addOrRemove(boolean add, boolean remove, char c) {
         if (add) {
             characters.add(c);
+            if (brightnessImgCharMatcher != null) {
+                brightnessImgCharMatcher.addChar(c);
+            }
         } else if (remove) {
             characters.remove(c);
+            if (brightnessImgCharMatcher != null) {
+                brightnessImgCharMatcher.removeChar(c);
+            }
         }
     }
 
@@ -192,6 +244,11 @@ public class Shell {
                 renderOrConsole(printToHtml);
             } else if (input.strip().equals(CONSOLE)) {
                 printToHtml = false;
+            } else if (input.strip().equals(CACHE)) {
+                printCacheStats();
+            } else if (input.strip().equals(COLOR)) {
+                renderColors = !renderColors;
+                System.out.println(renderColors ? COLOR_ON_MSG : COLOR_OFF_MSG);
             } else {
                 printGeneralWrongInputMessage();
             }
@@ -207,25 +264,82 @@ public class Shell {
      *                    to out.html, false if it is to console
      */
     private void renderOrConsole(boolean printToHtml) {
-        BrightnessImgCharMatcher brightnessImgCharMatcher = new BrightnessImgCharMatcher(img, FONT);
-        Character[] chars = Arrays.copyOf(characters.toArray(), characters.size(), Character[].class);
-        char[][] chars2dArray = brightnessImgCharMatcher.chooseChars(charsInRow, chars);
+        /*a cached render needs neither the image nor matching, only the chars that the matcher matches*/
+        if (brightnessImgCharMatcher == null && !prepareMatcher()) {
+            return;
+        }
+        char[][] chars2dArray = renderCache.get(renderKey());
+        if (chars2dArray == null) {
+            if (!prepareMatcher()) {
+                return;
+            }
+            chars2dArray = brightnessImgCharMatcher.chooseChars(charsInRow);
+            renderCache.put(renderKey(), chars2dArray);
+            if (lookupTableSize != UNSET_LOOKUP_TABLE_SIZE) {
+                System.out.println(String.format(LOOKUP_TABLE_MSG, lookupTableSize,
+                        100 * brightnessImgCharMatcher.getLookupTableFallbackRatio()));
+            }
+        }
         if (printToHtml) {
             renderImg(chars2dArray);
         } else {
             console(chars2dArray);
-            console(chars2dArray);
         }
     }
 
+    /**
+     * @return key of the current render settings: resolution, font and the chars that are matched, which
+     * depend on the order the characters were added in too. the decoded image depends only on the
+     * resolution, see ImageSource.forCharsInRow
+     */
+    private String renderKey() {
+        return String.valueOf(charsInRow) + KEY_SEPARATOR + FONT + KEY_SEPARATOR
+                + String.valueOf(brightnessImgCharMatcher.getMatchedChars());
+    }
+
+    /**
+     * prints the hits, misses and size of the render cache
+     */
+    private void printCacheStats() {
+        System.out.println(String.format(CACHE_STATS_MSG, renderCache.getHits(), renderCache.getMisses(),
+                renderCache.size(), renderCache.getBytes()));
+    }
+
+    /**
+     * decodes the image in enough detail for the current resolution and gives it to the matcher
+     *
+     * @return true if the matcher is ready to assemble the image, false if the image could not be read
+     */
+    private boolean prepareMatcher() {
+        Image img;
+        try {
+            img = imageSource.forCharsInRow(charsInRow);
+        } catch (IOException e) {
+            System.out.println(LOAD_FAILURE_MSG);
+            return false;
+        }
+        if (brightnessImgCharMatcher == null) {
+            brightnessImgCharMatcher = new BrightnessImgCharMatcher(img, FONT);
+            if (lookupTableSize != UNSET_LOOKUP_TABLE_SIZE) {
+                brightnessImgCharMatcher.setLookupTableSize(lookupTableSize);
+            }
+            for (char c : characters) {
+                brightnessImgCharMatcher.addChar(c);
+            }
+        } else {
+            /*the image brightness is calculated again only if the image was decoded again*/
+            brightnessImgCharMatcher.setImage(img);
+        }
+        return true;
+    }
+
     /**
      * prints final processed image to console
      *
      * @param chars2dArray 2 dimension array of the chars that assembles final image to output to console
      */
     private void console(char[][] chars2dArray) {
-        ConsoleAsciiOutput asciiOutput = new ConsoleAsciiOutput();
-        asciiOutput.output(chars2dArray);
+        consoleOutput.output(chars2dArray);
     }
 
     /**
@@ -236,7 +350,12 @@ public class Shell {
      */
     private void renderImg(char[][] chars2dArray) {
         HtmlAsciiOutput htmlOutput = new HtmlAsciiOutput(FILE_NAME, FONT);
-        htmlOutput.output(chars2dArray);
+        if (!renderColors) {
+            htmlOutput.output(chars2dArray);
+            return;
+        }
+        /*the matcher has the image of the current resolution, see prepareMatcher*/
+        htmlOutput.output(chars2dArray, brightnessImgCharMatcher.chooseColors(charsInRow));
     }
 
     /**
@@ -2,26 +2,49 @@ package ascii_art.img_to_char;
 
 
 import image.Image;
-import image.SubImage;
 
-import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class BrightnessImgCharMatcher {
     private static final int NUM_OF_PIXELS = 16;
     private static final int RGB_MAX_VAL = 255;
-    private static final double RED_FACTOR = 0.2126;
-    private static final double GREEN_FACTOR = 0.7152;
-    private static final double BLUE_FACTOR = 0.0722;
-    private static final double MIN_DIFFERENCE_BEFORE_INITIALIZATION = -1;
+    /*grey values are scaled to integers, so that they sum exactly, see GreyKernel*/
+    private static final long GREY_SCALE = GreyKernel.GREY_SCALE;
+    private static final GreyKernel GREY_KERNEL = GreyKernel.create();
+    private static final int DEFAULT_LOOKUP_TABLE_SIZE = 4096;
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 16;
 
-    private final Image img;
+    private Image img;
     private final String font;
     private double minBrightness;
     private double maxBrightness;
+    /*sums of the grey values of the subImages of img by their edge size, row after row. each level is
+    built once, from the level of half the edge size when there is one*/
+    private final HashMap<Integer, long[]> greyPyramid;
 
+    /*the chars of the char set, and the chars of the char set by their brightness before linear stretch.
+    of the chars with the same brightness, only the first one that was added is matched*/
+    private final HashSet<Character> charSet;
+    private final TreeMap<Double, ArrayDeque<Character>> charsByBrightness;
     private final HashMap<Character, Double> brightnesses;
     private final HashMap<Character, Double> brightnessesBefore;
+    private final HashMap<Character, Double> charsBrightnessCache;
+    /*brightnesses after linear stretch, sorted for the search of the closest char, rebuilt when it is
+    needed after the char set changes*/
+    private BrightnessIndex brightnessIndex;
+    private boolean brightnessIndexChanged;
+    private int lookupTableSize;
+    /*pool that the work is split in when there are at least parallelThreshold pixels or tiles, null for
+    serial work*/
+    private ForkJoinPool pool;
+    private int parallelThreshold;
 
     /**
      * constructor of BrightnessImgCharMatcher
@@ -32,12 +55,135 @@ public class BrightnessImgCharMatcher {
     public BrightnessImgCharMatcher(Image img, String font) {
         this.img = img;
         this.font = font;
+        this.charSet = new HashSet<>();
+        this.charsByBrightness = new TreeMap<>();
         this.brightnesses = new HashMap<>();
         this.brightnessesBefore = new HashMap<>();
+        this.charsBrightnessCache = new HashMap<>();
+        this.greyPyramid = new HashMap<>();
+        this.lookupTableSize = DEFAULT_LOOKUP_TABLE_SIZE;
+        this.pool = ForkJoinPool.commonPool();
+        this.parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
         minBrightness = 1;//will be updated at first inserting of characters
         maxBrightness = 0;////will be updated at first inserting of characters
     }
 
+    /**
+     * sets the number of buckets in the table that brightnesses are looked up in before they are searched
+     * among the brightnesses of the chars. a bigger table makes fewer searches, the chosen chars are the
+     * same for any size
+     *
+     * @param lookupTableSize number of buckets, a power of 2, or 0 to always search
+     */
+    public void setLookupTableSize(int lookupTableSize) {
+        if (lookupTableSize < 0 || Integer.bitCount(lookupTableSize) > 1) {
+            throw new IllegalArgumentException("lookup table size must be 0 or a power of 2");
+        }
+        this.lookupTableSize = lookupTableSize;
+        brightnessIndexChanged = true;
+    }
+
+    /**
+     * sets the image to match chars to, keeping the brightnesses of the chars
+     *
+     * @param img image interface
+     */
+    public void setImage(Image img) {
+        if (img != this.img) {
+            this.img = img;
+            greyPyramid.clear();
+        }
+    }
+
+    /**
+     * adds a character to the char set. its brightness is rendered only the first time it is added, and the
+     * linear stretch of the other characters is only updated if it is the darkest or brightest character
+     *
+     * @param character character to add
+     */
+    public void addChar(char character) {
+        if (!charSet.add(character)) {
+            return;
+        }
+        double brightness = charsBrightnessCache.computeIfAbsent(character,
+                this::NormalizeBrightnessByDivision);
+        ArrayDeque<Character> sameBrightness = charsByBrightness.computeIfAbsent(brightness,
+                key -> new ArrayDeque<>());
+        sameBrightness.addLast(character);
+        if (sameBrightness.size() == 1) {
+            brightnessesBefore.put(character, brightness);
+            updateLinearStretchCharBrightness(character);
+        }
+    }
+
+    /**
+     * removes a character from the char set. if another character has the same brightness, it is matched
+     * instead
+     *
+     * @param character character to remove
+     */
+    public void removeChar(char character) {
+        if (!charSet.remove(character)) {
+            return;
+        }
+        double brightness = charsBrightnessCache.get(character);
+        ArrayDeque<Character> sameBrightness = charsByBrightness.get(brightness);
+        boolean matched = sameBrightness.peekFirst() == character;
+        sameBrightness.remove(character);
+        if (sameBrightness.isEmpty()) {
+            charsByBrightness.remove(brightness);
+        }
+        if (!matched) {
+            return;
+        }
+        brightnessesBefore.remove(character);
+        brightnesses.remove(character);
+        Character replacement = sameBrightness.peekFirst();
+        if (replacement != null) {
+            brightnessesBefore.put(replacement, brightness);
+        }
+        updateLinearStretchCharBrightness(replacement);
+    }
+
+    /**
+     * of the chars with the same brightness only the first one that was added is matched, so the chars that
+     * are matched depend on the order the chars were added in, and not only on the char set
+     *
+     * @return the chars that the subImages can be replaced with, sorted
+     */
+    public char[] getMatchedChars() {
+        char[] matchedChars = new char[charsByBrightness.size()];
+        int i = 0;
+        for (ArrayDeque<Character> sameBrightness : charsByBrightness.values()) {
+            matchedChars[i++] = sameBrightness.peekFirst();
+        }
+        Arrays.sort(matchedChars);
+        return matchedChars;
+    }
+
+    /**
+     * the error of the lookup table against searching the brightnesses of the chars is 0, as the buckets
+     * that the closest char changes in are searched
+     *
+     * @return the part of the brightness range that is searched instead of looked up, for the char set of
+     * the last call to chooseChars
+     */
+    public double getLookupTableFallbackRatio() {
+        return brightnessIndex == null ? 1 : brightnessIndex.lookupTableFallbackRatio();
+    }
+
+    /**
+     * sets the pool that summing the image and choosing the chars are split in, by bands of rows (or
+     * columns). the chosen chars are the same as of serial work
+     *
+     * @param pool              pool to run in, or null to always work serially
+     * @param parallelThreshold the minimal number of pixels or tiles to split between threads
+     */
+    public void setParallelism(ForkJoinPool pool, int parallelThreshold) {
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+    }
+
     /**
      * this method counts the white pixels of a char and return it divided by the total number of pixels
      * in our  case each char has 16*16 pixels, as the exercise instructions
@@ -68,132 +214,260 @@ public class BrightnessImgCharMatcher {
      * @return new value of brightness after stretch
      */
     private double NormalizeBrightnessByLinearStretch(Character character) {
+        if (brightnessesBefore.size() == 1) {
+            /*a single character is matched by its own brightness*/
+            return brightnessesBefore.get(character);
+        }
         return (brightnessesBefore.get(character) - minBrightness) / (maxBrightness - minBrightness);
     }
 
 
     /**
-     * calc the grey color of a given color
+     * gives the level of the grey pyramid of the given edge size, building it at the first time. a level of
+     * an even edge size is summed from the level of half the edge size, 4 subImages for each subImage, and
+     * the levels below it are built first. the smallest levels are summed from the pixels of the image
      *
-     * @param pixel color of a pixel
-     * @return new color of pixel - grey color
+     * @param edgeSize width and height of the subImages
+     * @return sums of the grey values of the subImages, row after row, multiplied by GREY_SCALE
      */
-    private double calcGreyPixel(Color pixel) {
-        return pixel.getRed() * RED_FACTOR + pixel.getGreen() * GREEN_FACTOR + pixel.getBlue() * BLUE_FACTOR;
+    private long[] greyPyramidLevel(int edgeSize) {
+        long[] level = greyPyramid.get(edgeSize);
+        if (level != null) {
+            return level;
+        }
+        int numCols = img.getWidth() / edgeSize;
+        int numRows = img.getHeight() / edgeSize;
+        long[] newLevel = new long[numCols * numRows];
+        if (edgeSize % 2 == 0 && edgeSize > 2) {
+            long[] below = greyPyramidLevel(edgeSize / 2);
+            int belowCols = img.getWidth() / (edgeSize / 2);
+            forEachBand(numRows, numCols, (fromRow, toRow) -> {
+                for (int i = fromRow; i < toRow; i++) {
+                    int top = 2 * i * belowCols, bottom = top + belowCols;
+                    for (int j = 0; j < numCols; j++) {
+                        newLevel[i * numCols + j] = below[top + 2 * j] + below[top + 2 * j + 1]
+                                + below[bottom + 2 * j] + below[bottom + 2 * j + 1];
+                    }
+                }
+            });
+        } else {
+            int width = numCols * edgeSize;
+            forEachBand(numRows, width * edgeSize, (fromRow, toRow) -> {
+                int[] rowPixels = new int[img.getWidth()];
+                for (int y = fromRow * edgeSize; y < toRow * edgeSize; y++) {
+                    img.copyRow(y, rowPixels, 0);
+                    GREY_KERNEL.addTileSums(rowPixels, numCols, edgeSize, newLevel, (y / edgeSize) * numCols);
+                }
+            });
+        }
+        greyPyramid.put(edgeSize, newLevel);
+        return newLevel;
     }
 
-
     /**
-     * calc the brightness of subImage, counts its grey values and divided by number of pixels and maximum
-     * rgb value
+     * calc the brightness of a subImage from the sum of its grey values, divided by number of pixels and
+     * maximum rgb value
      *
-     * @param subImage a subImage of the image
+     * @param sumGreyPixels sum of the grey values of the subImage, multiplied by GREY_SCALE
+     * @param edgeSize      width and height of the subImage
      * @return the brightness value of a given subImage
      */
-    private double subImageBrightness(SubImage subImage) {
-        double sumGreyPixels = 0;
-        int edgeSize = subImage.getWidth();
-        int col = subImage.getCol();//y
-        int row = subImage.getRow();//x
-        /*iterate pixels in subImage*/
-        for (int j = col; j < col + edgeSize; j++) {
-            for (int i = row; i < row + edgeSize; i++) {
-                Color pixel = subImage.getPixel(j, i);
-                double greyPixel = this.calcGreyPixel(pixel);
-                sumGreyPixels += greyPixel;
-            }
-        }
-        return sumGreyPixels / (double) (edgeSize * edgeSize * RGB_MAX_VAL);
+    static double subImageBrightness(long sumGreyPixels, int edgeSize) {
+        return sumGreyPixels / (double) (GREY_SCALE * edgeSize * edgeSize * RGB_MAX_VAL);
     }
 
     /**
      * given a subImage, replace it with the character that its brightness is the most similar to the
      * subImage brightness
      *
-     * @param subImage subImage of the Image
+     * @param sumGreyPixels sum of the grey values of the subImage, multiplied by GREY_SCALE
+     * @param edgeSize      width and height of the subImage
      * @return the most similar character (similar by brightness values)
      */
-    private Character replaceSubImageWithChar(SubImage subImage) {
-        double subImageBrightness = subImageBrightness(subImage);
-        double difference;
-        double minDifference = MIN_DIFFERENCE_BEFORE_INITIALIZATION;
-        Character closestChar = null;
-        for (var ch : brightnesses.entrySet()) {
-            difference = Math.abs(subImageBrightness - ch.getValue());
-            if (minDifference == MIN_DIFFERENCE_BEFORE_INITIALIZATION) {
-                minDifference = difference;
-                closestChar = ch.getKey();
-            }
-            if (difference < minDifference) {
-                minDifference = difference;
-                closestChar = ch.getKey();
+    private char replaceSubImageWithChar(long sumGreyPixels, int edgeSize) {
+        return brightnessIndex.closestChar(subImageBrightness(sumGreyPixels, edgeSize));
+    }
+
+    /**
+     * updates the minimum and maximum brightness of the matched characters. if they changed, applied the
+     * linear stretch on all the matched characters, otherwise only on the character that is now matched
+     *
+     * @param character character that is now matched, or null
+     */
+    private void updateLinearStretchCharBrightness(Character character) {
+        double newMinBrightness = charsByBrightness.isEmpty() ? 1 : charsByBrightness.firstKey();
+        double newMaxBrightness = charsByBrightness.isEmpty() ? 0 : charsByBrightness.lastKey();
+        if (newMinBrightness != minBrightness || newMaxBrightness != maxBrightness) {
+            minBrightness = newMinBrightness;
+            maxBrightness = newMaxBrightness;
+            brightnesses.clear();
+            for (var ch : brightnessesBefore.keySet()) {
+                brightnesses.put(ch, NormalizeBrightnessByLinearStretch(ch));
             }
+        } else if (character != null) {
+            brightnesses.put(character, NormalizeBrightnessByLinearStretch(character));
         }
-        return closestChar;
+        brightnessIndexChanged = true;
     }
 
     /**
-     * if there are more than character, applied on them the linear stretch
+     * for each subImage, replace it with the most fit character from the user input characters, return the
+     * image assemble from characters only. the char set of the matcher is changed to the given characters
      *
-     * @param charSet characters of user input
+     * @param numCharsInRow number of subImages in a row
+     * @param charSet       characters that the user insert, only them will assemble the image
+     * @return 2 dimension array of characters that assemble the image
      */
-    private void updateLinearStretchCharBrightness(Character[] charSet) {
-        for (var ch : charSet) {
-            if (brightnessesBefore.containsKey(ch)) {
-                double linearStretch = NormalizeBrightnessByLinearStretch(ch);
-                brightnesses.put(ch, linearStretch);
+    public char[][] chooseChars(int numCharsInRow, Character[] charSet) {
+        HashSet<Character> newCharSet = new HashSet<>(Arrays.asList(charSet));
+        for (var ch : new ArrayList<>(this.charSet)) {
+            if (!newCharSet.contains(ch)) {
+                removeChar(ch);
             }
         }
+        for (var ch : charSet) {
+            addChar(ch);
+        }
+        return chooseChars(numCharsInRow);
     }
 
     /**
-     * inserting to the characters and their brightnesses(before linear stretch) only if they are not in it
-     * already and there is no other character with this brightness already, also update min and max variables
+     * for each subImage, replace it with the most fit character from the char set, return the image
+     * assemble from characters only. the matcher may be reused for other resolutions and character sets,
+     * the subImages of each resolution are summed once, from the subImages of the resolution that is
+     * twice as fine. large images are matched in parallel
      *
-     * @param charSet characters of user input
+     * @param numCharsInRow number of subImages in a row
+     * @return 2 dimension array of characters that assemble the image
      */
-    private void updateCharsBrightness(Character[] charSet) {
-        for (var ch : charSet) {
-            if (!brightnessesBefore.containsKey(ch)) {
-                double brightness = NormalizeBrightnessByDivision(ch);
-                if (!brightnessesBefore.containsValue(brightness)) {
-                    brightnessesBefore.put(ch, brightness);
-                    if (brightness <= minBrightness) {
-                        minBrightness = brightness;
-                    } else if (brightness >= maxBrightness) {
-                        maxBrightness = brightness;
-                    }
+    public char[][] chooseChars(int numCharsInRow) {
+        int edgeSize = img.getWidth() / numCharsInRow;
+        long[] level = greyPyramidLevel(edgeSize);
+        int levelCols = img.getWidth() / edgeSize;
+        updateBrightnessIndex();
+        int row = img.getHeight() / edgeSize;
+        char[][] chars = new char[row][numCharsInRow];
+        /*each band of rows is written by one thread, in the same order as the subImages of img*/
+        forEachBand(row, numCharsInRow, (fromRow, toRow) -> {
+            for (int i = fromRow; i < toRow; i++) {
+                for (int j = 0; j < numCharsInRow; j++) {
+                    chars[i][j] = replaceSubImageWithChar(level[i * levelCols + j], edgeSize);
                 }
             }
-        }
+        });
+        return chars;
+    }
 
+    /**
+     * rebuilds the index of the brightnesses of the chars if the char set changed since it was built
+     *
+     * @return the index of the brightnesses of the chars of the char set
+     */
+    BrightnessIndex updateBrightnessIndex() {
+        if (brightnessIndexChanged) {
+            brightnessIndex = new BrightnessIndex(brightnesses, lookupTableSize);
+            brightnessIndexChanged = false;
+        }
+        return brightnessIndex;
     }
 
     /**
-     * for each subImage, replace it with the most fit character from the user input characters, return the
-     * image assemble from characters only
+     * for each subImage, gives its average color, the color of the char that replaces it
      *
      * @param numCharsInRow number of subImages in a row
-     * @param charSet       characters that the user insert, only them will assemble the image
-     * @return 2 dimension array of characters that assemble the image
+     * @return 2 dimension array of the packed rgb values of the average colors of the subImages, in the same
+     * order as the characters of chooseChars
      */
-    public char[][] chooseChars(int numCharsInRow, Character[] charSet) {
+    public int[][] chooseColors(int numCharsInRow) {
         int edgeSize = img.getWidth() / numCharsInRow;
-        updateCharsBrightness(charSet);
-        if (charSet.length > 1) {
-            updateLinearStretchCharBrightness(charSet);
-        }
         int row = img.getHeight() / edgeSize;
-        char[][] chars = new char[row][numCharsInRow];
-        int i = 0, j = 0;
-        for (Image subImage : img.subImages(edgeSize)) {
-            chars[i][j] = replaceSubImageWithChar((SubImage) subImage);
-            j++;
-            if (j == numCharsInRow) {
-                j = 0;
-                i++;
+        int[][] colors = new int[row][numCharsInRow];
+        long numPixels = (long) edgeSize * edgeSize;
+        forEachBand(row, numCharsInRow * edgeSize * edgeSize, (fromRow, toRow) -> {
+            int[] rowPixels = new int[img.getWidth()];
+            long[] channelSums = new long[3 * numCharsInRow];
+            for (int i = fromRow; i < toRow; i++) {
+                Arrays.fill(channelSums, 0);
+                for (int y = i * edgeSize; y < (i + 1) * edgeSize; y++) {
+                    img.copyRow(y, rowPixels, 0);
+                    for (int j = 0, x = 0; j < numCharsInRow; j++) {
+                        /*a row of a subImage is at most 2^23 pixels, its channel sums fit in an int*/
+                        int red = 0, green = 0, blue = 0;
+                        for (int end = x + edgeSize; x < end; x++) {
+                            int rgb = rowPixels[x];
+                            red += (rgb >> 16) & 0xff;
+                            green += (rgb >> 8) & 0xff;
+                            blue += rgb & 0xff;
+                        }
+                        channelSums[3 * j] += red;
+                        channelSums[3 * j + 1] += green;
+                        channelSums[3 * j + 2] += blue;
+                    }
+                }
+                for (int j = 0; j < numCharsInRow; j++) {
+                    /*rounded to the closest value*/
+                    int red = (int) ((channelSums[3 * j] + numPixels / 2) / numPixels);
+                    int green = (int) ((channelSums[3 * j + 1] + numPixels / 2) / numPixels);
+                    int blue = (int) ((channelSums[3 * j + 2] + numPixels / 2) / numPixels);
+                    colors[i][j] = (red << 16) | (green << 8) | blue;
+                }
             }
+        });
+        return colors;
+    }
+
+    /**
+     * runs the action on bands that cover the range [0, numLines), in the pool if there is enough work
+     *
+     * @param numLines   number of lines (rows or columns) in the range
+     * @param lineCost   work units (pixels or tiles) in each line
+     * @param bandAction action to run on each band
+     */
+    private void forEachBand(int numLines, int lineCost, BandAction bandAction) {
+        long cost = (long) numLines * lineCost;
+        if (pool == null || cost < parallelThreshold || numLines < 2) {
+            bandAction.run(0, numLines);
+            return;
+        }
+        int minBandLines = Math.max(1, parallelThreshold / Math.max(1, lineCost));
+        pool.invoke(new BandTask(bandAction, 0, numLines, minBandLines));
+    }
+
+    /**
+     * an action on the lines [from, to) of a range
+     */
+    private interface BandAction {
+        void run(int from, int to);
+    }
+
+    /**
+     * splits a range of lines in halves until the bands are small enough, and runs the action on each band
+     */
+    private static class BandTask extends RecursiveAction {
+        /*RecursiveAction is serializable, but a task only lives in the pool and is never serialized*/
+        private static final long serialVersionUID = 1L;
+
+        private final transient BandAction bandAction;
+        private final int from;
+        private final int to;
+        private final int minBandLines;
+
+        BandTask(BandAction bandAction, int from, int to, int minBandLines) {
+            this.bandAction = bandAction;
+            this.from = from;
+            this.to = to;
+            this.minBandLines = minBandLines;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= minBandLines) {
+                bandAction.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new BandTask(bandAction, from, middle, minBandLines),
+                    new BandTask(bandAction, middle, to, minBandLines));
         }
-        return chars;
     }
 }
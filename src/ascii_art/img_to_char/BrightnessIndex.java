@@ -0,0 +1,124 @@
+package ascii_art.img_to_char;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * A package-private class of the package img_to_char.
+ * Characters sorted by their brightness, for finding the character whose brightness is the closest to a
+ * given brightness with a binary search.
+ * Brightnesses between 0 and 1 are first looked up in a table of equal buckets, which holds the closest
+ * character of every bucket that the closest character does not change in. Only brightnesses in the other
+ * buckets are searched, so the lookup always returns the same character as the search.
+ */
+class BrightnessIndex {
+    private static final int AMBIGUOUS_BUCKET = -1;
+
+    private final double[] sortedBrightnesses;
+    private final char[] sortedChars;
+    /*position of each char in the iteration order of the map it was built from, for breaking ties*/
+    private final int[] iterationOrder;
+    /*the closest character of each bucket, or AMBIGUOUS_BUCKET*/
+    private final int[] lookupTable;
+    private final int numAmbiguousBuckets;
+
+    /**
+     * constructor of BrightnessIndex
+     *
+     * @param brightnesses    characters and their brightnesses. when two characters are equally close to a
+     *                        brightness, the one that comes first in the iteration order of this map is
+     *                        chosen
+     * @param lookupTableSize number of buckets in the lookup table, a power of 2, or 0 for no table
+     */
+    BrightnessIndex(Map<Character, Double> brightnesses, int lookupTableSize) {
+        int size = brightnesses.size();
+        double[] values = new double[size];
+        char[] chars = new char[size];
+        int i = 0;
+        for (var ch : brightnesses.entrySet()) {
+            values[i] = ch.getValue();
+            chars[i] = ch.getKey();
+            i++;
+        }
+        /*a stable sort of the positions keeps equal brightnesses in iteration order*/
+        Integer[] positions = new Integer[size];
+        Arrays.setAll(positions, position -> position);
+        Arrays.sort(positions, Comparator.comparingDouble(position -> values[position]));
+        sortedBrightnesses = new double[size];
+        sortedChars = new char[size];
+        iterationOrder = new int[size];
+        for (i = 0; i < size; i++) {
+            sortedBrightnesses[i] = values[positions[i]];
+            sortedChars[i] = chars[positions[i]];
+            iterationOrder[i] = positions[i];
+        }
+        lookupTable = new int[size > 0 ? lookupTableSize : 0];
+        int ambiguous = 0;
+        for (int bucket = 0; bucket < lookupTable.length; bucket++) {
+            /*the bucket size is a power of 2, so its bounds are exact*/
+            char lowerChar = searchClosestChar(bucket / (double) lookupTable.length);
+            char upperChar = searchClosestChar(Math.nextDown((bucket + 1) / (double) lookupTable.length));
+            if (lowerChar == upperChar) {
+                lookupTable[bucket] = lowerChar;
+            } else {
+                lookupTable[bucket] = AMBIGUOUS_BUCKET;
+                ambiguous++;
+            }
+        }
+        numAmbiguousBuckets = ambiguous;
+    }
+
+    /**
+     * @return number of characters in the index
+     */
+    int size() {
+        return sortedChars.length;
+    }
+
+    /**
+     * @return the part of the buckets of the lookup table whose brightnesses are searched, 1 if there is
+     * no table
+     */
+    double lookupTableFallbackRatio() {
+        return lookupTable.length == 0 ? 1 : numAmbiguousBuckets / (double) lookupTable.length;
+    }
+
+    /**
+     * @param brightness brightness to match
+     * @return the character whose brightness is the most similar to the given brightness
+     */
+    char closestChar(double brightness) {
+        /*multiplying by a power of 2 is exact, so the bucket holds the brightness*/
+        int bucket = (int) (brightness * lookupTable.length);
+        if (bucket >= 0 && bucket < lookupTable.length && lookupTable[bucket] != AMBIGUOUS_BUCKET) {
+            return (char) lookupTable[bucket];
+        }
+        return searchClosestChar(brightness);
+    }
+
+    /**
+     * @param brightness brightness to match
+     * @return the character whose brightness is the most similar to the given brightness, by binary search
+     */
+    private char searchClosestChar(double brightness) {
+        int upper = Arrays.binarySearch(sortedBrightnesses, brightness);
+        if (upper >= 0) {
+            return sortedChars[upper];
+        }
+        upper = -upper - 1;//first brightness greater than the given brightness
+        int lower = upper - 1;
+        if (lower < 0) {
+            return sortedChars[upper];
+        }
+        if (upper == sortedBrightnesses.length) {
+            return sortedChars[lower];
+        }
+        double lowerDifference = brightness - sortedBrightnesses[lower];
+        double upperDifference = sortedBrightnesses[upper] - brightness;
+        if (lowerDifference == upperDifference) {
+            return sortedChars[iterationOrder[lower] < iterationOrder[upper] ? lower : upper];
+        }
+        return sortedChars[lowerDifference < upperDifference ? lower : upper];
+    }
+}
@@ -2,6 +2,11 @@ package ascii_art.img_to_char;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
 
 /**
  * Inspired by, and partly copied from
@@ -14,15 +19,108 @@ import java.awt.image.BufferedImage;
 public class CharRenderer {
     private static final double X_OFFSET_FACTOR = 0.2;
     private static final double Y_OFFSET_FACTOR = 0.75;
+    private static final int CACHE_FILE_MAGIC = 0x41414743; //"AAGC"
+    private static final int PIXELS_SHIFT = Character.SIZE;
+    /*the largest size of a glyph whose key keeps the size apart from the char and positive*/
+    private static final int MAX_CACHED_PIXELS = (1 << (Integer.SIZE - 1 - PIXELS_SHIFT)) - 1;
+
+    /*rendered glyphs by font name, and then by size and char*/
+    private static final Map<String, Map<Integer, boolean[][]>> glyphCache = new ConcurrentHashMap<>();
 
     /**
      * Renders a given character, according to how it looks in the font specified in the
      * constructor, to a square black&white image (2D array of booleans),
      * whose dimension in pixels is specified.
+     * Each glyph is rendered once, the returned array is shared and must not be modified.
      */
     public static boolean[][] getImg(char c, int pixels, String fontName) {
-        int key = (pixels << 8) | c;
-        return render(c, pixels, fontName);
+        int key = (pixels << PIXELS_SHIFT) | c;
+        return fontGlyphs(fontName).computeIfAbsent(key, k -> render(c, pixels, fontName));
+    }
+
+    private static Map<Integer, boolean[][]> fontGlyphs(String fontName) {
+        return glyphCache.computeIfAbsent(fontName, name -> new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Adds the glyphs saved by saveCache to the glyph cache. A missing file is ignored, and a broken one
+     * adds nothing.
+     */
+    public static void loadCache(String filename) {
+        File file = new File(filename);
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != CACHE_FILE_MAGIC) {
+                throw new IOException("not a glyph cache");
+            }
+            int numGlyphs = in.readInt();
+            if (numGlyphs < 0) {
+                throw new IOException("broken glyph cache");
+            }
+            /*added to the glyph cache only once the whole file is read*/
+            Map<String, Map<Integer, boolean[][]>> glyphs = new HashMap<>();
+            for (int i = 0; i < numGlyphs; i++) {
+                String fontName = in.readUTF();
+                int pixels = in.readInt();
+                char c = in.readChar();
+                /*the sizes are checked before anything is allocated, the bytes left in a file bound them*/
+                if (pixels <= 0 || pixels > MAX_CACHED_PIXELS
+                        || ((long) pixels * pixels + 7) / 8 > in.available()) {
+                    throw new IOException("broken glyph cache");
+                }
+                boolean[][] matrix = new boolean[pixels][pixels];
+                byte[] bits = new byte[(pixels * pixels + 7) / 8];
+                in.readFully(bits);
+                for (int j = 0; j < pixels * pixels; j++) {
+                    matrix[j / pixels][j % pixels] = (bits[j / 8] & (1 << (j % 8))) != 0;
+                }
+                glyphs.computeIfAbsent(fontName, name -> new HashMap<>()).put((pixels << PIXELS_SHIFT) | c,
+                        matrix);
+            }
+            for (var font : glyphs.entrySet()) {
+                fontGlyphs(font.getKey()).putAll(font.getValue());
+            }
+        } catch (IOException e) {
+            Logger.getGlobal().warning(String.format("Failed to load glyph cache \"%s\"", filename));
+        }
+    }
+
+    /**
+     * Saves all the glyphs rendered so far to a file, one bit per pixel, so that a later process
+     * can load them with loadCache instead of rendering them again.
+     */
+    public static void saveCache(String filename) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(filename)))) {
+            Map<String, Map<Integer, boolean[][]>> glyphs = new HashMap<>();
+            int numGlyphs = 0;
+            for (var font : glyphCache.entrySet()) {
+                glyphs.put(font.getKey(), Map.copyOf(font.getValue()));
+                numGlyphs += glyphs.get(font.getKey()).size();
+            }
+            out.writeInt(CACHE_FILE_MAGIC);
+            out.writeInt(numGlyphs);
+            for (var font : glyphs.entrySet()) {
+                for (var glyph : font.getValue().entrySet()) {
+                    boolean[][] matrix = glyph.getValue();
+                    int pixels = matrix.length;
+                    out.writeUTF(font.getKey());
+                    out.writeInt(pixels);
+                    out.writeChar((char) (int) glyph.getKey());
+                    byte[] bits = new byte[(pixels * pixels + 7) / 8];
+                    for (int j = 0; j < pixels * pixels; j++) {
+                        if (matrix[j / pixels][j % pixels]) {
+                            bits[j / 8] |= (byte) (1 << (j % 8));
+                        }
+                    }
+                    out.write(bits);
+                }
+            }
+        } catch (IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write glyph cache \"%s\"", filename));
+        }
     }
     private static boolean[][] render(char c, int pixels, String fontName) {
         String charStr = Character.toString(c);
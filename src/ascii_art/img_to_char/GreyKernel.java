@@ -0,0 +1,79 @@
+package ascii_art.img_to_char;
+
+import java.util.logging.Logger;
+
+/**
+ * A package-private class of the package ascii_art.img_to_char.
+ * Sums the grey values of the pixels of a row into the tiles that the row crosses. The grey value of a
+ * pixel is red*2126 + green*7152 + blue*722, the factors 0.2126, 0.7152 and 0.0722 scaled to integers, so
+ * that every kernel sums exactly the same values: the tolerance between the kernels is 0.
+ * The vector kernel is compiled apart from the other sources, from src-vector, as it needs the
+ * jdk.incubator.vector module. It is used when it was compiled and the module is present at runtime, and
+ * the scalar kernel otherwise.
+ */
+abstract class GreyKernel {
+    static final int RED_FACTOR = 2126;
+    static final int GREEN_FACTOR = 7152;
+    static final int BLUE_FACTOR = 722;
+    static final int GREY_SCALE = 10000;
+    /*system property that turns the vector kernel off when it is false*/
+    private static final String VECTOR_PROPERTY = "ascii_art.vectorKernel";
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_KERNEL = "ascii_art.img_to_char.VectorGreyKernel";
+
+    /**
+     * adds the sum of the grey values of each tile of a row of pixels to the sum of the tile
+     *
+     * @param rowPixels  packed rgb values of the row
+     * @param numTiles   number of tiles along the row, that begin at the first pixel
+     * @param edgeSize   width of a tile
+     * @param sums       sums of the grey values of the tiles
+     * @param sumsOffset index in sums of the first tile of the row
+     */
+    abstract void addTileSums(int[] rowPixels, int numTiles, int edgeSize, long[] sums, int sumsOffset);
+
+    /**
+     * @param rgb packed rgb value of a pixel
+     * @return grey value of the pixel, multiplied by GREY_SCALE
+     */
+    static int grey(int rgb) {
+        return ((rgb >> 16) & 0xff) * RED_FACTOR + ((rgb >> 8) & 0xff) * GREEN_FACTOR
+                + (rgb & 0xff) * BLUE_FACTOR;
+    }
+
+    /**
+     * @return the vector kernel if it was compiled, the vector module is present and it is not turned off,
+     * the scalar kernel otherwise
+     */
+    static GreyKernel create() {
+        boolean vector = Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true"))
+                && ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+        if (vector) {
+            try {
+                /*loaded by name, so that the other sources compile and run without the module*/
+                return (GreyKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+            } catch (ClassNotFoundException e) {
+                /*built without src-vector*/
+            } catch (ReflectiveOperationException | LinkageError e) {
+                Logger.getGlobal().warning("Failed to load the vector kernel, using the scalar kernel");
+            }
+        }
+        return new ScalarGreyKernel();
+    }
+
+    /**
+     * sums the grey values one pixel at a time
+     */
+    static class ScalarGreyKernel extends GreyKernel {
+        @Override
+        void addTileSums(int[] rowPixels, int numTiles, int edgeSize, long[] sums, int sumsOffset) {
+            for (int tile = 0, x = 0; tile < numTiles; tile++) {
+                long sum = 0;
+                for (int end = x + edgeSize; x < end; x++) {
+                    sum += grey(rowPixels[x]);
+                }
+                sums[sumsOffset + tile] += sum;
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+
+import java.util.Arrays;
+
+/**
+ * Matches chars to the frames of an animation, one frame after the other. A tile (the subImage of a char)
+ * whose pixels did not change since the previous frame keeps its char without being summed, and a tile
+ * whose brightness changed by no more than a threshold since it was last matched keeps its char without
+ * being matched. With a threshold of 0 the chars of each frame are those of BrightnessImgCharMatcher.
+ */
+public class SequenceImgCharMatcher {
+    private static final GreyKernel GREY_KERNEL = GreyKernel.create();
+
+    private final BrightnessImgCharMatcher charMatcher;
+    private final int numCharsInRow;
+    private final double threshold;
+    /*pixels of the tiles of the previous and of the current frame, row after row*/
+    private int[] previousPixels;
+    private int[] currentPixels;
+    private int width;
+    private int height;
+    /*chars of the previous frame and the brightnesses that they were matched to, null before the first
+    frame and after the size of the frames changes*/
+    private char[][] previousChars;
+    private double[] matchedBrightnesses;
+    private long reusedTiles;
+    private long keptTiles;
+    private long matchedTiles;
+
+    /**
+     * constructor of SequenceImgCharMatcher
+     *
+     * @param numCharsInRow number of subImages in a row of every frame
+     * @param charSet       characters that assemble the frames
+     * @param font          font of the chars
+     * @param threshold     the largest change of the brightness of a tile, between 0 and 1, that keeps its
+     *                      char
+     */
+    public SequenceImgCharMatcher(int numCharsInRow, Character[] charSet, String font, double threshold) {
+        this.charMatcher = new BrightnessImgCharMatcher(null, font);
+        for (var ch : charSet) {
+            charMatcher.addChar(ch);
+        }
+        this.numCharsInRow = numCharsInRow;
+        this.threshold = threshold;
+    }
+
+    /**
+     * matches chars to the next frame of the animation
+     *
+     * @param frame the next frame, whose width is divided by the number of chars in a row
+     * @return 2 dimension array of characters that assemble the frame
+     */
+    public char[][] chooseChars(Image frame) {
+        int edgeSize = frame.getWidth() / numCharsInRow;
+        int numRows = frame.getHeight() / edgeSize;
+        int tilesWidth = numCharsInRow * edgeSize;
+        if (frame.getWidth() != width || frame.getHeight() != height) {
+            /*the frames changed size, no tile is reused*/
+            width = frame.getWidth();
+            height = frame.getHeight();
+            previousPixels = new int[tilesWidth * numRows * edgeSize];
+            currentPixels = new int[previousPixels.length];
+            previousChars = null;
+            matchedBrightnesses = new double[numRows * numCharsInRow];
+        }
+        BrightnessIndex brightnessIndex = charMatcher.updateBrightnessIndex();
+        int[] rowPixels = new int[tilesWidth];
+        long[] sums = new long[numCharsInRow];
+        boolean[] changed = new boolean[numCharsInRow];
+        char[][] chars = new char[numRows][];
+        for (int i = 0; i < numRows; i++) {
+            int rowOffset = i * edgeSize * tilesWidth;
+            frame.copyRegion(0, i * edgeSize, tilesWidth, edgeSize, currentPixels, rowOffset, tilesWidth);
+            boolean rowChanged = previousChars == null;
+            Arrays.fill(changed, rowChanged);
+            for (int y = 0; y < edgeSize && previousChars != null; y++) {
+                int offset = rowOffset + y * tilesWidth;
+                if (Arrays.equals(currentPixels, offset, offset + tilesWidth,
+                        previousPixels, offset, offset + tilesWidth)) {
+                    /*most rows of pixels of an animation do not change, they are compared at once*/
+                    continue;
+                }
+                for (int j = 0, x = offset; j < numCharsInRow; j++, x += edgeSize) {
+                    if (!changed[j] && !Arrays.equals(currentPixels, x, x + edgeSize,
+                            previousPixels, x, x + edgeSize)) {
+                        changed[j] = true;
+                        rowChanged = true;
+                    }
+                }
+            }
+            if (previousChars != null && !rowChanged) {
+                chars[i] = previousChars[i].clone();
+                reusedTiles += numCharsInRow;
+                continue;
+            }
+            /*the tiles of a row are summed together, the row of pixels is read once*/
+            Arrays.fill(sums, 0);
+            for (int y = 0; y < edgeSize; y++) {
+                System.arraycopy(currentPixels, rowOffset + y * tilesWidth, rowPixels, 0, tilesWidth);
+                GREY_KERNEL.addTileSums(rowPixels, numCharsInRow, edgeSize, sums, 0);
+            }
+            chars[i] = previousChars == null ? new char[numCharsInRow] : previousChars[i].clone();
+            for (int j = 0; j < numCharsInRow; j++) {
+                if (!changed[j]) {
+                    reusedTiles++;
+                    continue;
+                }
+                double brightness = BrightnessImgCharMatcher.subImageBrightness(sums[j], edgeSize);
+                int tile = i * numCharsInRow + j;
+                if (previousChars != null && Math.abs(brightness - matchedBrightnesses[tile]) <= threshold) {
+                    keptTiles++;
+                    continue;
+                }
+                chars[i][j] = brightnessIndex.closestChar(brightness);
+                matchedBrightnesses[tile] = brightness;
+                matchedTiles++;
+            }
+        }
+        int[] swap = previousPixels;
+        previousPixels = currentPixels;
+        currentPixels = swap;
+        previousChars = chars;
+        return chars;
+    }
+
+    /**
+     * @return number of tiles whose pixels did not change since the previous frame
+     */
+    public long getReusedTiles() {
+        return reusedTiles;
+    }
+
+    /**
+     * @return number of tiles whose brightness changed by no more than the threshold, that kept their char
+     */
+    public long getKeptTiles() {
+        return keptTiles;
+    }
+
+    /**
+     * @return number of tiles that were matched to a char
+     */
+    public long getMatchedTiles() {
+        return matchedTiles;
+    }
+}
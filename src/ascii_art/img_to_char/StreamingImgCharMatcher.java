@@ -0,0 +1,71 @@
+package ascii_art.img_to_char;
+
+import ascii_output.StreamingAsciiOutput;
+import image.Image;
+import image.ImageBandReader;
+
+import java.io.IOException;
+
+/**
+ * Matches chars to an image a band of rows of chars at a time, reading only the band of the image that the
+ * rows are made of. The memory used depends on the size of a band and not on the height of the image.
+ */
+public class StreamingImgCharMatcher {
+    /*a band has as many rows of chars as fit in this number of pixels, and at least one row*/
+    private static final int MAX_BAND_PIXELS = 1 << 20;
+
+    private final ImageBandReader reader;
+    private final String font;
+    /*reused for all the bands, so that the brightnesses of the chars are calculated only once*/
+    private BrightnessImgCharMatcher matcher;
+
+    /**
+     * constructor of StreamingImgCharMatcher
+     *
+     * @param reader reader of the bands of the image
+     * @param font   font of the chars
+     */
+    public StreamingImgCharMatcher(ImageBandReader reader, String font) {
+        this.reader = reader;
+        this.font = font;
+    }
+
+    /**
+     * for each subImage, replace it with the most fit character from the user input characters, and
+     * output each row of characters as soon as it is chosen
+     *
+     * @param numCharsInRow number of subImages in a row
+     * @param charSet       characters that the user insert, only them will assemble the image
+     * @param output        output of the rows of characters
+     * @throws IOException if a band of the image can not be read
+     */
+    public void chooseChars(int numCharsInRow, Character[] charSet, StreamingAsciiOutput output)
+            throws IOException {
+        int edgeSize = reader.getWidth() / numCharsInRow;
+        int numRows = reader.getHeight() / edgeSize;
+        int rowsInBand = (int) Math.max(1, MAX_BAND_PIXELS / ((long) reader.getWidth() * edgeSize));
+        output.begin(numRows, numCharsInRow);
+        /*the rows of pixels below the last row of chars make a band without chars*/
+        reader.forEachBand(rowsInBand * edgeSize, band -> {
+            for (char[] charsRow : chooseBandChars(band, numCharsInRow, charSet)) {
+                output.outputRow(charsRow);
+            }
+        });
+        output.end();
+    }
+
+    /**
+     * @param band          a band of rows of the image
+     * @param numCharsInRow number of subImages in a row
+     * @param charSet       characters that the user insert, only them will assemble the image
+     * @return 2 dimension array of characters that assemble the band
+     */
+    private char[][] chooseBandChars(Image band, int numCharsInRow, Character[] charSet) {
+        if (matcher == null) {
+            matcher = new BrightnessImgCharMatcher(band, font);
+        } else {
+            matcher.setImage(band);
+        }
+        return matcher.chooseChars(numCharsInRow, charSet);
+    }
+}
@@ -0,0 +1,182 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A 2D array of chars that was written by BinaryAsciiOutput, mapped to memory. The rows are read straight
+ * from the mapped file and are not copied unless they are asked for as chars.
+ */
+public class BinaryAsciiGrid {
+    private final ByteBuffer indexPlane;
+    private final ByteBuffer colorPlane;
+    private final int numRows;
+    private final int numCols;
+    private final int resolution;
+    private final char[] charSet;
+    private final String fontName;
+
+    private BinaryAsciiGrid(ByteBuffer indexPlane, ByteBuffer colorPlane, int numRows, int numCols,
+                            int resolution, char[] charSet, String fontName) {
+        this.indexPlane = indexPlane;
+        this.colorPlane = colorPlane;
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.resolution = resolution;
+        this.charSet = charSet;
+        this.fontName = fontName;
+    }
+
+    /**
+     * maps a file that BinaryAsciiOutput wrote to memory
+     *
+     * @param filename file to map
+     * @return the 2D array of chars of the file
+     * @throws IOException if the file can not be read or is not in the format of BinaryAsciiOutput
+     */
+    public static BinaryAsciiGrid open(String filename) throws IOException {
+        MappedByteBuffer file;
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            /*the mapping stays valid after the channel is closed*/
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (file.getInt() != BinaryAsciiOutput.MAGIC || file.getShort() != BinaryAsciiOutput.VERSION) {
+                throw new IOException("Not an ascii grid file: " + filename);
+            }
+            boolean withColors = (file.get() & BinaryAsciiOutput.COLORS_FLAG) != 0;
+            int numRows = file.getInt();
+            int numCols = file.getInt();
+            int resolution = file.getInt();
+            char[] charSet = new char[file.getShort()];
+            for (int i = 0; i < charSet.length; i++) {
+                charSet[i] = file.getChar();
+            }
+            byte[] font = new byte[file.getShort()];
+            file.get(font);
+            long planeSize = (long) numRows * numCols;
+            int planes = withColors ? 1 + BinaryAsciiOutput.COLOR_BYTES : 1;
+            long expectedSize = file.position() + planeSize * planes;
+            if (numRows < 0 || numCols < 0 || file.capacity() != expectedSize) {
+                throw new IOException("Broken ascii grid file: " + filename);
+            }
+            ByteBuffer indexPlane = file.slice().limit((int) planeSize).slice();
+            ByteBuffer colorPlane = withColors ?
+                    file.position(file.position() + (int) planeSize).slice() : null;
+            return new BinaryAsciiGrid(indexPlane, colorPlane, numRows, numCols, resolution, charSet,
+                    new String(font, StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            /*the header is cut short or its sizes are out of range*/
+            throw new IOException("Broken ascii grid file: " + filename, e);
+        }
+    }
+
+    /**
+     * @return number of rows of chars
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * @return number of chars in a row
+     */
+    public int getNumCols() {
+        return numCols;
+    }
+
+    /**
+     * @return number of chars in a row that was rendered
+     */
+    public int getResolution() {
+        return resolution;
+    }
+
+    /**
+     * @return the chars that the indexes refer to
+     */
+    public char[] getCharSet() {
+        return charSet.clone();
+    }
+
+    /**
+     * @return font of the chars
+     */
+    public String getFontName() {
+        return fontName;
+    }
+
+    /**
+     * @return true if the file has the colors of the chars
+     */
+    public boolean hasColors() {
+        return colorPlane != null;
+    }
+
+    /**
+     * @param row row of chars
+     * @return a read only view of the indexes in the char set of the chars of the row, in the mapped file
+     */
+    public ByteBuffer rowIndexes(int row) {
+        int from = row * numCols;
+        return indexPlane.duplicate().position(from).limit(from + numCols).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @param row row of chars
+     * @return a read only view of the red, green and blue bytes of the chars of the row, in the mapped file
+     * @throws IllegalStateException if the file has no colors
+     */
+    public ByteBuffer rowColors(int row) {
+        if (colorPlane == null) {
+            throw new IllegalStateException("the ascii grid has no colors");
+        }
+        int from = row * numCols * BinaryAsciiOutput.COLOR_BYTES;
+        return colorPlane.duplicate().position(from).limit(from + numCols * BinaryAsciiOutput.COLOR_BYTES)
+                .slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @param row row of chars
+     * @param col column of chars
+     * @return the char at the row and column
+     */
+    public char charAt(int row, int col) {
+        return charSet[indexPlane.get(row * numCols + col) & 0xff];
+    }
+
+    /**
+     * @param row row of chars
+     * @param col column of chars
+     * @return packed rgb value of the color of the char at the row and column
+     * @throws IllegalStateException if the file has no colors
+     */
+    public int colorAt(int row, int col) {
+        if (colorPlane == null) {
+            throw new IllegalStateException("the ascii grid has no colors");
+        }
+        int offset = (row * numCols + col) * BinaryAsciiOutput.COLOR_BYTES;
+        return ((colorPlane.get(offset) & 0xff) << 16) | ((colorPlane.get(offset + 1) & 0xff) << 8)
+                | (colorPlane.get(offset + 2) & 0xff);
+    }
+
+    /**
+     * @return a copy of the 2D array of chars
+     */
+    public char[][] toChars() {
+        char[][] chars = new char[numRows][numCols];
+        byte[] indexes = new byte[numCols];
+        for (int y = 0; y < numRows; y++) {
+            indexPlane.get(y * numCols, indexes);
+            for (int x = 0; x < numCols; x++) {
+                chars[y][x] = charSet[indexes[x] & 0xff];
+            }
+        }
+        return chars;
+    }
+}
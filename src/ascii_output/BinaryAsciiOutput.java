@@ -0,0 +1,265 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Output a 2D array of chars to a compact binary file, that BinaryAsciiGrid maps back to memory.
+ * The file is big endian:
+ * <pre>
+ * int    magic 0x41414742
+ * short  version 1
+ * byte   flags, 1 if there is a color plane
+ * int    number of rows
+ * int    number of columns
+ * int    resolution, the number of chars in a row that was rendered
+ * short  number of chars in the char set, at most 256, then each char as 2 bytes
+ * short  number of bytes of the font name, then the name in UTF-8
+ * the index plane: a byte for each char, row after row, the index of the char in the char set
+ * the color plane, if there is one: 3 bytes, red green and blue, for each char, row after row
+ * </pre>
+ */
+public class BinaryAsciiOutput implements StreamingAsciiOutput {
+    static final int MAGIC = 0x41414742;
+    static final short VERSION = 1;
+    static final byte COLORS_FLAG = 1;
+    /*most chars in the char set of a file, as the index of a char is a byte*/
+    public static final int MAX_CHARS = 256;
+    static final int COLOR_BYTES = 3;
+    private static final int NO_INDEX = -1;
+
+    private final String filename;
+    private final char[] charSet;
+    private final String fontName;
+    private final int resolution;
+    private final boolean withColors;
+    /*index in charSet of each char below 256, and of the other chars by binary search in sortedChars*/
+    private final int[] asciiIndexes;
+    private final char[] sortedChars;
+    private final int[] sortedIndexes;
+    /*open between begin and end, null if opening the file failed*/
+    private FileChannel channel;
+    /*true if writing failed since begin*/
+    private boolean writeFailed;
+    private ByteBuffer rowBuffer;
+    private long indexPlane;
+    private long colorPlane;
+    private int numCols;
+    private int nextRow;
+
+    /**
+     * @param filename   file to write to
+     * @param charSet    the chars that the 2D array is made of, at most 256
+     * @param fontName   font of the chars, of at most Short.MAX_VALUE bytes in UTF-8
+     * @param resolution number of chars in a row that was rendered
+     * @param withColors true to write a color plane, by outputRow(row, colors)
+     */
+    public BinaryAsciiOutput(String filename, char[] charSet, String fontName, int resolution,
+                             boolean withColors) {
+        if (charSet.length > MAX_CHARS) {
+            throw new IllegalArgumentException("a char set of at most 256 chars can be written");
+        }
+        if (fontName.getBytes(StandardCharsets.UTF_8).length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("a font name of at most 32767 bytes can be written");
+        }
+        this.filename = filename;
+        this.charSet = charSet.clone();
+        this.fontName = fontName;
+        this.resolution = resolution;
+        this.withColors = withColors;
+        this.asciiIndexes = new int[MAX_CHARS];
+        Arrays.fill(asciiIndexes, NO_INDEX);
+        Integer[] order = new Integer[charSet.length];
+        for (int i = 0; i < charSet.length; i++) {
+            order[i] = i;
+            if (charSet[i] < MAX_CHARS && asciiIndexes[charSet[i]] == NO_INDEX) {
+                asciiIndexes[charSet[i]] = i;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Character.compare(charSet[a], charSet[b]));
+        this.sortedChars = new char[charSet.length];
+        this.sortedIndexes = new int[charSet.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedChars[i] = charSet[order[i]];
+            sortedIndexes[i] = order[i];
+        }
+    }
+
+    /**
+     * writes the 2D array of chars to a file, reporting a failure to write instead of logging it
+     *
+     * @param filename   file to write to
+     * @param chars      2D array of chars
+     * @param colors     packed rgb values of the colors of the chars, or null for a file without colors
+     * @param charSet    the chars that the 2D array is made of, at most MAX_CHARS
+     * @param fontName   font of the chars
+     * @param resolution number of chars in a row that was rendered
+     * @throws IOException if the file can not be written, the file may then be partly written
+     */
+    public static void write(String filename, char[][] chars, int[][] colors, char[] charSet,
+                             String fontName, int resolution) throws IOException {
+        BinaryAsciiOutput output = new BinaryAsciiOutput(filename, charSet, fontName, resolution,
+                colors != null);
+        try {
+            output.open(chars.length, chars[0].length);
+            for (int y = 0; y < chars.length; y++) {
+                output.writeRow(chars[y], colors == null ? null : colors[y]);
+            }
+        } finally {
+            if (output.channel != null) {
+                /*a failure to close is reported too, the file may not be whole*/
+                output.channel.close();
+                output.channel = null;
+            }
+        }
+    }
+
+    @Override
+    public void begin(int numRows, int numCols) {
+        writeFailed = false;
+        try {
+            open(numRows, numCols);
+        } catch(IOException e) {
+            failed();
+        }
+    }
+
+    /**
+     * opens the file and writes the header
+     */
+    private void open(int numRows, int numCols) throws IOException {
+        channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        byte[] font = fontName.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES * 4 + Short.BYTES * 3 + 1
+                + charSet.length * Character.BYTES + font.length);
+        header.putInt(MAGIC).putShort(VERSION).put(withColors ? COLORS_FLAG : 0)
+                .putInt(numRows).putInt(numCols).putInt(resolution)
+                .putShort((short) charSet.length);
+        for (char c : charSet) {
+            header.putChar(c);
+        }
+        header.putShort((short) font.length).put(font).flip();
+        write(header, 0);
+        this.numCols = numCols;
+        indexPlane = header.capacity();
+        colorPlane = indexPlane + (long) numRows * numCols;
+        nextRow = 0;
+        rowBuffer = ByteBuffer.allocateDirect(numCols * (withColors ? COLOR_BYTES : 1));
+    }
+
+    @Override
+    public void outputRow(char[] row) {
+        outputRow(row, null);
+    }
+
+    /**
+     * Output the next row of the 2D array of chars, and the packed rgb values of the colors of its chars if
+     * the output has a color plane
+     */
+    public void outputRow(char[] row, int[] colors) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            writeRow(row, colors);
+        } catch(IOException e) {
+            failed();
+        }
+    }
+
+    /**
+     * writes the indexes of a row, and its colors if the file has a color plane
+     */
+    private void writeRow(char[] row, int[] colors) throws IOException {
+        rowBuffer.clear();
+        for (char c : row) {
+            rowBuffer.put((byte) indexOf(c));
+        }
+        rowBuffer.flip();
+        write(rowBuffer, indexPlane + (long) nextRow * numCols);
+        if (withColors) {
+            rowBuffer.clear();
+            for (int x = 0; x < row.length; x++) {
+                int rgb = colors == null ? 0 : colors[x];
+                rowBuffer.put((byte) (rgb >> 16)).put((byte) (rgb >> 8)).put((byte) rgb);
+            }
+            rowBuffer.flip();
+            write(rowBuffer, colorPlane + (long) nextRow * numCols * COLOR_BYTES);
+        }
+        nextRow++;
+    }
+
+    /**
+     * Output the specified 2D array of chars, with the colors of its chars if the output has a color plane.
+     * colors may be null, the color plane is then black
+     */
+    public void output(char[][] chars, int[][] colors) {
+        begin(chars.length, chars[0].length);
+        for (int y = 0; y < chars.length; y++) {
+            outputRow(chars[y], colors == null ? null : colors[y]);
+        }
+        end();
+    }
+
+    @Override
+    public void end() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+            channel = null;
+        } catch(IOException e) {
+            failed();
+        }
+    }
+
+    /**
+     * @return index of the char in the char set
+     * @throws IllegalArgumentException if the char is not in the char set
+     */
+    private int indexOf(char c) {
+        int index = c < MAX_CHARS ? asciiIndexes[c] : NO_INDEX;
+        if (index == NO_INDEX) {
+            int sorted = Arrays.binarySearch(sortedChars, c);
+            if (sorted < 0) {
+                throw new IllegalArgumentException("'" + c + "' is not in the char set");
+            }
+            index = sortedIndexes[sorted];
+        }
+        return index;
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    @Override
+    public boolean hasFailed() {
+        return writeFailed;
+    }
+
+    /**
+     * logs the failure and stops writing to the file
+     */
+    private void failed() {
+        writeFailed = true;
+        Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+    }
+}
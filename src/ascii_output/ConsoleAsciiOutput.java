@@ -1,16 +1,88 @@
 package ascii_output;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.logging.Logger;
+
 /**
  * Output a 2D array of chars to the console.
+ * The rows are collected in a buffer and the whole array is written to the console at once by end. The
+ * buffers are kept for the next array, so an output that is used again does not allocate.
  * @author Dan Nirel
- */public class ConsoleAsciiOutput implements AsciiOutput{
+ */public class ConsoleAsciiOutput implements StreamingAsciiOutput {
+    private static final char SEPARATOR = ' ';
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    /*the console, not closed as it is shared with System.out*/
+    private static final FileChannel STDOUT = new FileOutputStream(FileDescriptor.out).getChannel();
+
+    private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private CharBuffer frame = CharBuffer.allocate(0);
+    private ByteBuffer bytes = ByteBuffer.allocateDirect(0);
+
+    @Override
+    public void begin(int numRows, int numCols) {
+        frame.clear();
+        ensureCapacity(numRows * rowLength(numCols));
+    }
+
+    @Override
+    public void outputRow(char[] row) {
+        ensureCapacity(rowLength(row.length));
+        for (char c : row) {
+            frame.put(c).put(SEPARATOR);
+        }
+        frame.put(LINE_SEPARATOR);
+    }
+
     @Override
-    public void output(char[][] chars) {
-        for (int y = 0; y < chars.length ; y++) {
-            for (int x = 0; x < chars[y].length; x++) {
-                System.out.print(chars[y][x] + " ");
+    public void end() {
+        frame.flip();
+        int maxBytes = (int) Math.ceil(frame.remaining() * (double) encoder.maxBytesPerChar());
+        if (bytes.capacity() < maxBytes) {
+            bytes = ByteBuffer.allocateDirect(maxBytes);
+        }
+        bytes.clear();
+        encoder.reset();
+        encoder.encode(frame, bytes, true);
+        encoder.flush(bytes);
+        bytes.flip();
+        /*what was printed before the array is printed before it*/
+        System.out.flush();
+        try {
+            while (bytes.hasRemaining()) {
+                STDOUT.write(bytes);
             }
-            System.out.println();
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to write to the console");
+        }
+        frame.clear();
+    }
+
+    /**
+     * @return number of chars of a row of numCols chars in the buffer
+     */
+    private static int rowLength(int numCols) {
+        return numCols * 2 + LINE_SEPARATOR.length();
+    }
+
+    /**
+     * grows the buffer of the array so that at least length more chars fit in it
+     */
+    private void ensureCapacity(int length) {
+        if (frame.remaining() >= length) {
+            return;
         }
+        CharBuffer larger = CharBuffer.allocate(Math.max(frame.position() + length, frame.capacity() * 2));
+        frame.flip();
+        larger.put(frame);
+        frame = larger;
     }
 }
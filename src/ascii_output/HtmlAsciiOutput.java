@@ -1,29 +1,151 @@
 package ascii_output;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Output a 2D array of chars to an HTML file viewable in a web browser.
+ * The html is encoded as UTF-8 into a direct buffer that is taken from a pool for the whole output and
+ * returned to it at the end, each char through a table of the bytes it is escaped to, and written to a file
+ * or to any channel, such as a socket, optionally compressed with gzip.
+ * The chars can be given colors. A row of chars of the same color, also across lines, is written in a
+ * single span, and the colors can be quantized so that more chars have the same color.
  * @author Dan Nirel
  */
-public class HtmlAsciiOutput implements AsciiOutput {
+public class HtmlAsciiOutput implements StreamingAsciiOutput {
     private static final double BASE_LINE_SPACING = 0.8;
     private static final double BASE_FONT_SIZE = 150.0;
+    private static final int BUFFER_SIZE = 1 << 16;
+    /*direct buffers of the outputs that ended, reused by the next outputs of any thread instead of each
+    output allocating native memory that is freed only when it is collected*/
+    private static final BlockingQueue<ByteBuffer> FREE_BUFFERS =
+            new ArrayBlockingQueue<>(2 * Runtime.getRuntime().availableProcessors());
+    /*most bytes that a char is written as: "&amp;"*/
+    private static final int MAX_CHAR_BYTES = 5;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private static final byte[] REPLACEMENT = {'?'};
+    private static final int MAX_COLOR_BITS = 8;
+    private static final int NO_COLOR = -1;
+    private static final byte[] SPAN_START = "<span style=\"color:#".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SPAN_START_END = "\">".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SPAN_END = "</span>".getBytes(StandardCharsets.UTF_8);
+    private static final int MAX_SPAN_BYTES = SPAN_END.length + SPAN_START.length + 6 + SPAN_START_END.length;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+    /*bytes of each char below 128 that is escaped in html, null for the chars that are written as they are*/
+    private static final byte[][] ESCAPES = new byte[128][];
+
+    static {
+        ESCAPES['<'] = "&lt;".getBytes(StandardCharsets.UTF_8);
+        ESCAPES['>'] = "&gt;".getBytes(StandardCharsets.UTF_8);
+        ESCAPES['&'] = "&amp;".getBytes(StandardCharsets.UTF_8);
+    }
+
     private final String fontName;
     private final String filename;
+    /*channel to output to instead of the file, null to output to the file*/
+    private final WritableByteChannel out;
+    private final boolean gzip;
+    /*taken from FREE_BUFFERS between begin and end, null otherwise*/
+    private ByteBuffer buffer;
+    /*bits of each channel of a color that are kept, and half of the value of the dropped bits*/
+    private int colorMask;
+    private int colorRounding;
+    /*color of the span that is open, NO_COLOR if there is none*/
+    private int spanColor;
+    /*open between begin and end, null if opening the file failed*/
+    private WritableByteChannel channel;
+    /*true if writing failed since begin*/
+    private boolean writeFailed;
 
     public HtmlAsciiOutput(String filename, String fontName) {
+        this(filename, fontName, false);
+    }
+
+    /**
+     * Output to a file, compressed with gzip if gzip is true
+     */
+    public HtmlAsciiOutput(String filename, String fontName, boolean gzip) {
+        this(filename, null, fontName, gzip);
+    }
+
+    /**
+     * Output to a channel instead of a file, compressed with gzip if gzip is true. The channel is closed
+     * by end
+     */
+    public HtmlAsciiOutput(WritableByteChannel out, String fontName, boolean gzip) {
+        this(null, out, fontName, gzip);
+    }
+
+    private HtmlAsciiOutput(String filename, WritableByteChannel out, String fontName, boolean gzip) {
         this.fontName = fontName;
         this.filename = filename;
+        this.out = out;
+        this.gzip = gzip;
+        applyColorBits(MAX_COLOR_BITS);
+    }
+
+    /**
+     * sets the number of bits of each channel of the colors of the chars that are kept, fewer bits make
+     * longer spans of the same color
+     *
+     * @param colorBits number of bits, from 1 to 8
+     */
+    public void setColorBits(int colorBits) {
+        if (colorBits < 1 || colorBits > MAX_COLOR_BITS) {
+            throw new IllegalArgumentException("color bits must be from 1 to 8");
+        }
+        applyColorBits(colorBits);
+    }
+
+    /**
+     * sets the masks of the colors, also from the constructor, where the public setter could be overridden
+     */
+    private void applyColorBits(int colorBits) {
+        int channelMask = (0xff << (MAX_COLOR_BITS - colorBits)) & 0xff;
+        colorMask = (channelMask << 16) | (channelMask << 8) | channelMask;
+        /*a quantized color is in the middle of the colors it stands for*/
+        int channelRounding = ((~channelMask & 0xff) + 1) >> 1;
+        colorRounding = (channelRounding << 16) | (channelRounding << 8) | channelRounding;
+    }
+
+    /**
+     * Output the specified 2D array of chars, each in the color of the same place in colors
+     */
+    public void output(char[][] chars, int[][] colors) {
+        begin(chars.length, chars[0].length);
+        for (int y = 0; y < chars.length; y++) {
+            outputRow(chars[y], colors[y]);
+        }
+        end();
     }
 
     @Override
-    public void output(char[][] chars) {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            writer.write(String.format(
+    public void begin(int numRows, int numCols) {
+        writeFailed = false;
+        buffer = FREE_BUFFERS.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        try {
+            channel = out != null ? out : FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            if (gzip) {
+                channel = Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(channel),
+                        BUFFER_SIZE));
+            }
+            buffer.clear();
+            spanColor = NO_COLOR;
+            write(String.format(
                 "<!DOCTYPE html>\n"+
                 "<html>\n"+
                 "<body style=\""+
@@ -36,27 +158,163 @@ public class HtmlAsciiOutput implements AsciiOutput {
                     "\tFONT-SIZE:%frem;"+
                     "\tLETTER-SPACING:0.15em;"+
                     "\tLINE-HEIGHT:%fem;\">\n",
-                    fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING));
-
-            for(int y = 0 ; y < chars.length ; y++) {
-                for (int x = 0; x < chars[y].length ; x++) {
-                    String htmlRep;
-                    switch(chars[y][x]) {
-                        case '<': htmlRep = "&lt;";  break;
-                        case '>': htmlRep = "&gt;";  break;
-                        case '&': htmlRep = "&amp;"; break;
-                        default:  htmlRep = String.valueOf(chars[y][x]);
+                    fontName, BASE_FONT_SIZE/numCols, BASE_LINE_SPACING));
+        } catch(IOException e) {
+            failed();
+        }
+    }
+
+    @Override
+    public void outputRow(char[] row) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            for (int x = 0; x < row.length ; x++) {
+                if (buffer.remaining() < MAX_CHAR_BYTES) {
+                    flush();
+                }
+                putChar(row[x]);
+            }
+            write(LINE_SEPARATOR);
+        } catch(IOException e) {
+            failed();
+        }
+    }
+
+    /**
+     * Output the next row of the 2D array of chars, each in the color of the same place in colors
+     */
+    public void outputRow(char[] row, int[] colors) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            for (int x = 0; x < row.length ; x++) {
+                if (buffer.remaining() < MAX_SPAN_BYTES + MAX_CHAR_BYTES) {
+                    flush();
+                }
+                int color = (colors[x] & colorMask) | colorRounding;
+                if (color != spanColor) {
+                    if (spanColor != NO_COLOR) {
+                        buffer.put(SPAN_END);
+                    }
+                    buffer.put(SPAN_START);
+                    for (int shift = 20; shift >= 0; shift -= 4) {
+                        buffer.put(HEX_DIGITS[(color >> shift) & 0xf]);
                     }
-                    writer.write(htmlRep);
+                    buffer.put(SPAN_START_END);
+                    spanColor = color;
                 }
-                writer.newLine();
+                putChar(row[x]);
+            }
+            write(LINE_SEPARATOR);
+        } catch(IOException e) {
+            failed();
+        }
+    }
+
+    @Override
+    public void end() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (spanColor != NO_COLOR) {
+                write(SPAN_END);
+                spanColor = NO_COLOR;
             }
-            writer.write(
+            write(
                 "</p>\n"+
                 "</body>\n"+
                 "</html>\n");
+            flush();
+            channel.close();
+            channel = null;
+            releaseBuffer();
         } catch(IOException e) {
-            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+            failed();
+        }
+    }
+
+    /**
+     * returns the buffer to FREE_BUFFERS, unless it is full
+     */
+    private void releaseBuffer() {
+        if (buffer != null) {
+            buffer.clear();
+            FREE_BUFFERS.offer(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * puts a char in the buffer as UTF-8, escaped if it is special in html. a char that is half of a
+     * surrogate pair can not be encoded alone and is replaced
+     */
+    private void putChar(char c) {
+        if (c < ESCAPES.length) {
+            byte[] escape = ESCAPES[c];
+            if (escape == null) {
+                buffer.put((byte) c);
+            } else {
+                buffer.put(escape);
+            }
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xc0 | (c >> 6))).put((byte) (0x80 | (c & 0x3f)));
+        } else if (Character.isSurrogate(c)) {
+            buffer.put(REPLACEMENT);
+        } else {
+            buffer.put((byte) (0xe0 | (c >> 12))).put((byte) (0x80 | ((c >> 6) & 0x3f)))
+                    .put((byte) (0x80 | (c & 0x3f)));
+        }
+    }
+
+    private void write(String text) throws IOException {
+        write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        for (int offset = 0; offset < bytes.length; ) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * writes the buffer to the channel and empties it
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public boolean hasFailed() {
+        return writeFailed;
+    }
+
+    /**
+     * logs the failure and stops writing to the file
+     */
+    private void failed() {
+        writeFailed = true;
+        Logger.getGlobal().severe(String.format("Failed to write to \"%s\"",
+                filename != null ? filename : out));
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
         }
+        releaseBuffer();
     }
 }
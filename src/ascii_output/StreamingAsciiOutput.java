@@ -0,0 +1,42 @@
+package ascii_output;
+
+/**
+ * An AsciiOutput that can output a 2D array of chars one row at a time, so that the whole array does not
+ * have to be in memory.
+ */
+public interface StreamingAsciiOutput extends AsciiOutput {
+    /**
+     * Start the output of a 2D array of chars of the specified size
+     */
+    void begin(int numRows, int numCols);
+
+    /**
+     * Output the next row of the 2D array of chars
+     */
+    void outputRow(char[] row);
+
+    /**
+     * Finish the output of the 2D array of chars
+     */
+    void end();
+
+    /**
+     * @return true if the output of the last 2D array of chars failed, as far as it is written. the failure
+     * is logged too
+     */
+    default boolean hasFailed() {
+        return false;
+    }
+
+    /**
+     * Output the specified 2D array of chars, row after row
+     */
+    @Override
+    default void output(char[][] chars) {
+        begin(chars.length, chars[0].length);
+        for (char[] row : chars) {
+            outputRow(row);
+        }
+        end();
+    }
+}
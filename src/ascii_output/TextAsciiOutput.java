@@ -0,0 +1,90 @@
+package ascii_output;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.logging.Logger;
+
+/**
+ * Output a 2D array of chars to a plain text file, one line for each row.
+ */
+public class TextAsciiOutput implements StreamingAsciiOutput {
+    private final String filename;
+    /*writer to output to instead of the file, null to output to the file*/
+    private final Writer out;
+    /*open between begin and end, null if opening the file failed*/
+    private BufferedWriter writer;
+    /*true if writing failed since begin*/
+    private boolean writeFailed;
+
+    public TextAsciiOutput(String filename) {
+        this.filename = filename;
+        this.out = null;
+    }
+
+    /**
+     * Output to a writer instead of a file. The writer is closed by end
+     */
+    public TextAsciiOutput(Writer out) {
+        this.filename = null;
+        this.out = out;
+    }
+
+    @Override
+    public void begin(int numRows, int numCols) {
+        writeFailed = false;
+        try {
+            writer = new BufferedWriter(out != null ? out : new FileWriter(filename));
+        } catch(IOException e) {
+            failed();
+        }
+    }
+
+    @Override
+    public void outputRow(char[] row) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(row);
+            writer.newLine();
+        } catch(IOException e) {
+            failed();
+        }
+    }
+
+    @Override
+    public void end() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+            writer = null;
+        } catch(IOException e) {
+            failed();
+        }
+    }
+
+    @Override
+    public boolean hasFailed() {
+        return writeFailed;
+    }
+
+    /**
+     * logs the failure and stops writing to the file
+     */
+    private void failed() {
+        writeFailed = true;
+        Logger.getGlobal().severe(String.format("Failed to write to \"%s\"",
+                filename != null ? filename : out));
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+            }
+            writer = null;
+        }
+    }
+}
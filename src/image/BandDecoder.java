@@ -0,0 +1,253 @@
+package image;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import org.w3c.dom.NodeList;
+
+/**
+ * A package-private class of the package image.
+ * Decodes an image once, from the top row to the bottom row, keeping only a band of rows in memory. The
+ * reader writes into a destination image whose data is a window of rows, and each band is handed over as
+ * soon as the reader writes the row after it. Only readers that write each row once are decoded so:
+ * those of png images, whose interlaced images write out of order and stop the decoding before a band is
+ * handed over, and those of jpeg images that are not progressive.
+ */
+class BandDecoder {
+    /**
+     * A package-private interface of the package image.
+     * Receives the bands of a decoded image, from top to bottom.
+     */
+    interface BandConsumer {
+        /**
+         * @param rows    image whose first numRows rows are the rows of the band
+         * @param top     row of the decoded image of the first row of the band
+         * @param numRows number of rows of the band
+         * @throws IOException if the band can not be processed, the decoding stops then
+         */
+        void accept(BufferedImage rows, int top, int numRows) throws IOException;
+    }
+
+    /*the process of the start of frame marker of progressive jpeg images, that are decoded in passes*/
+    private static final String PROGRESSIVE_JPEG_PROCESS = "2";
+
+    /*thrown through the reader when it writes a row out of order, without a stack trace*/
+    private static final RuntimeException OUT_OF_ORDER = new RuntimeException("row out of order", null,
+            false, false) {
+    };
+
+    private BandDecoder() {
+    }
+
+    /**
+     * decodes the image of reader by bands of rows. the first band has firstBandRows rows, the others have
+     * bandRows rows but the last one, that has the rows that are left
+     *
+     * @param reader        reader whose input is set, at image 0
+     * @param param         parameters of the decoding, its destination is replaced
+     * @param firstBandRows rows of the first band, at least 1
+     * @param bandRows      rows of the other bands, at least 1
+     * @param consumer      receives each band once all its rows are decoded
+     * @return the number of rows that were handed over, the height of the decoded image if all were, 0 if
+     * the reader does not write the rows in order
+     * @throws IOException if the image can not be decoded, or the consumer failed
+     */
+    static int decode(ImageReader reader, ImageReadParam param, int firstBandRows, int bandRows,
+                      BandConsumer consumer) throws IOException {
+        if (!writesRowsOnce(reader)) {
+            return 0;
+        }
+        int xSubsampling = param.getSourceXSubsampling(), ySubsampling = param.getSourceYSubsampling();
+        int width = (reader.getWidth(0) + xSubsampling - 1) / xSubsampling;
+        int height = (reader.getHeight(0) + ySubsampling - 1) / ySubsampling;
+        Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        if (!types.hasNext()) {
+            return 0;
+        }
+        ImageTypeSpecifier type = types.next();
+        BufferedImage window = type.createBufferedImage(width, Math.min(Math.max(firstBandRows, bandRows),
+                height));
+        int scanlineStride = scanlineStride(window.getSampleModel());
+        if (scanlineStride <= 0 || (long) scanlineStride * height > Integer.MAX_VALUE) {
+            /*rows that are not addressed by a stride, or more data than an array holds*/
+            return 0;
+        }
+        WindowBuffer buffer = new WindowBuffer(window, scanlineStride, height, firstBandRows, bandRows,
+                consumer);
+        SampleModel sampleModel = window.getSampleModel().createCompatibleSampleModel(width, height);
+        if (scanlineStride(sampleModel) != scanlineStride) {
+            return 0;
+        }
+        WritableRaster raster = Raster.createWritableRaster(sampleModel, buffer, null);
+        ColorModel colorModel = type.getColorModel();
+        param.setDestination(new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null));
+        try {
+            reader.read(0, param);
+            buffer.finish();
+        } catch (IOException | RuntimeException e) {
+            /*readers may wrap what is thrown through them*/
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) cause).getCause();
+                }
+                if (cause == OUT_OF_ORDER || cause instanceof ClassCastException) {
+                    /*a reader that writes out of order, or that casts the data of the destination to an
+                    array*/
+                    reader.abort();
+                    return buffer.handedOverRows();
+                }
+            }
+            throw e;
+        } finally {
+            param.setDestination(null);
+        }
+        return buffer.handedOverRows();
+    }
+
+    /**
+     * @param reader reader whose input is set
+     * @return true if the reader writes each row of image 0 once, unless it writes them out of order
+     * @throws IOException if the metadata of the image can not be read
+     */
+    private static boolean writesRowsOnce(ImageReader reader) throws IOException {
+        String format = reader.getFormatName();
+        if (format.equalsIgnoreCase("png")) {
+            return true;
+        }
+        if (!format.equalsIgnoreCase("jpeg")) {
+            return false;
+        }
+        IIOMetadata metadata = reader.getImageMetadata(0);
+        if (metadata == null || metadata.getNativeMetadataFormatName() == null) {
+            return false;
+        }
+        IIOMetadataNode tree = (IIOMetadataNode) metadata.getAsTree(metadata.getNativeMetadataFormatName());
+        NodeList startsOfFrame = tree.getElementsByTagName("sof");
+        return startsOfFrame.getLength() == 1 && !PROGRESSIVE_JPEG_PROCESS.equals(
+                ((IIOMetadataNode) startsOfFrame.item(0)).getAttribute("process"));
+    }
+
+    /**
+     * @param sampleModel sample model of an image
+     * @return the number of data elements between a row of the image and the next one, or 0 if it is not
+     * known
+     */
+    private static int scanlineStride(SampleModel sampleModel) {
+        if (sampleModel instanceof ComponentSampleModel) {
+            return ((ComponentSampleModel) sampleModel).getScanlineStride();
+        }
+        if (sampleModel instanceof SinglePixelPackedSampleModel) {
+            return ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+        }
+        if (sampleModel instanceof MultiPixelPackedSampleModel) {
+            return ((MultiPixelPackedSampleModel) sampleModel).getScanlineStride();
+        }
+        return 0;
+    }
+
+    /**
+     * The data of a whole decoded image, of which only a window of rows is kept, in the data of an image of
+     * the rows of the window.
+     */
+    private static class WindowBuffer extends DataBuffer {
+        private final BufferedImage window;
+        private final DataBuffer windowData;
+        private final int scanlineStride;
+        private final int height;
+        private final int bandRows;
+        private final BandConsumer consumer;
+        /*rows of the decoded image in the window*/
+        private int windowTop;
+        private int windowRows;
+        /*the last row that the reader wrote, -1 before the first one*/
+        private int lastRow;
+
+        WindowBuffer(BufferedImage window, int scanlineStride, int height, int firstBandRows, int bandRows,
+                     BandConsumer consumer) {
+            super(window.getRaster().getDataBuffer().getDataType(), scanlineStride * height,
+                    window.getRaster().getDataBuffer().getNumBanks());
+            this.window = window;
+            this.windowData = window.getRaster().getDataBuffer();
+            this.scanlineStride = scanlineStride;
+            this.height = height;
+            this.bandRows = bandRows;
+            this.consumer = consumer;
+            windowRows = Math.min(firstBandRows, height);
+            lastRow = -1;
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            /*samples that are packed with others are read before they are written*/
+            int row = i / scanlineStride;
+            if (row != lastRow) {
+                writeRow(row);
+            }
+            return windowData.getElem(bank, i - windowTop * scanlineStride);
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            int row = i / scanlineStride;
+            if (row != lastRow) {
+                writeRow(row);
+            }
+            windowData.setElem(bank, i - windowTop * scanlineStride, val);
+        }
+
+        /**
+         * moves on to the given row, handing over the band of the rows before it if it is the first row of
+         * the next band
+         */
+        private void writeRow(int row) {
+            if (row != lastRow + 1) {
+                throw OUT_OF_ORDER;
+            }
+            if (row == windowTop + windowRows) {
+                handOver();
+                windowTop = row;
+                windowRows = Math.min(bandRows, height - row);
+            }
+            lastRow = row;
+        }
+
+        private void handOver() {
+            try {
+                consumer.accept(window, windowTop, windowRows);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * hands over the last band, once the reader has returned
+         */
+        void finish() {
+            if (lastRow == height - 1) {
+                handOver();
+                windowTop = height;
+            }
+        }
+
+        /**
+         * @return the number of rows of the bands that were handed over
+         */
+        int handedOverRows() {
+            return windowTop;
+        }
+    }
+}
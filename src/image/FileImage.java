@@ -2,6 +2,7 @@ package image;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 
@@ -11,53 +12,62 @@ import java.io.IOException;
  * @author Dan Nirel
  */
 class FileImage implements Image {
-    private static final int RESIZE_FACTOR = 2;
     private static final Color DEFAULT_COLOR = Color.WHITE;
 
-    private final Color[][] pixelArray;
-    private final java.awt.image.BufferedImage img;
+    private final int width;
+    private final int height;
+    /*packed rgb values, row after row*/
+    private final int[] pixels;
 
     /**
-     * constructor of file Image object, add white pixels padding to the image if nedded
+     * constructor of file Image object. the decoded image is copied into a packed int array row by row and
+     * is not kept afterwards. the image is not padded, see PaddedImage
      *
      * @param filename name of image file
      * @throws IOException throws IOException
      */
     public FileImage(String filename) throws IOException {
-        java.awt.image.BufferedImage im = ImageIO.read(new File(filename));
-        this.img = im;
-        int origWidth = im.getWidth(), origHeight = im.getHeight();
-        int newWidth = origWidth;
-        int newHeight = origHeight;
-        /*padding width*/
-        while ((int) (Math.ceil((Math.log(newWidth) / Math.log(2))))
-                != (int) (Math.floor(((Math.log(newWidth) / Math.log(2)))))) {
-            newWidth += RESIZE_FACTOR;
+        this(read(filename));
+    }
+
+    /**
+     * constructor of file Image object from a decoded image
+     *
+     * @param im decoded image, not kept after construction
+     */
+    FileImage(BufferedImage im) {
+        width = im.getWidth();
+        height = im.getHeight();
+        pixels = new int[width * height];
+        /*original image colors, read a whole row at a time*/
+        for (int rows = 0; rows < height; rows++) {
+            im.getRGB(0, rows, width, 1, pixels, rows * width, width);
         }
-        /*padding height*/
-        while ((int) (Math.ceil((Math.log(newHeight) / Math.log(2))))
-                != (int) (Math.floor(((Math.log(newHeight) / Math.log(2)))))) {
-            newHeight += RESIZE_FACTOR;
+        for (int i = 0; i < pixels.length; i++) {
+            /*the alpha channel is ignored, as new Color(rgb) did*/
+            pixels[i] |= 0xff000000;
         }
+    }
 
-        pixelArray = new Color[newHeight][newWidth];
-        int rowsPadding = (newHeight - origHeight) / 2;
-        int colsPadding = (newWidth - origWidth) / 2;
-        /*setting white color at padding pixels and setting the other pixels to the color in the original
-        image*/
-        for (int rows = 0; rows < newHeight; rows++) {
-            for (int cols = 0; cols < newWidth; cols++) {
-                /*if it is at padding pixels - white*/
-                if (cols < colsPadding || colsPadding + origWidth <= cols || rowsPadding > rows || rowsPadding + origHeight <= rows) {
-                    pixelArray[rows][cols] = DEFAULT_COLOR;
-                } else {
-                    /*original image colors*/
-                    int originPixelColor = this.img.getRGB(cols - colsPadding, rows - rowsPadding);
-                    pixelArray[rows][cols] = new Color(originPixelColor);
+    /**
+     * constructor of file Image object from packed rgb values
+     *
+     * @param pixels packed rgb values, row after row, kept by the image
+     * @param width  width of the image
+     * @param height height of the image
+     */
+    FileImage(int[] pixels, int width, int height) {
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+    }
 
-                }
-            }
+    private static BufferedImage read(String filename) throws IOException {
+        BufferedImage im = ImageIO.read(new File(filename));
+        if (im == null) {
+            throw new IOException("Unsupported image format: " + filename);
         }
+        return im;
     }
 
     /**
@@ -65,7 +75,7 @@ class FileImage implements Image {
      */
     @Override
     public int getWidth() {
-        return pixelArray[0].length;
+        return width;
     }
 
     /**
@@ -73,22 +83,36 @@ class FileImage implements Image {
      */
     @Override
     public int getHeight() {
-        return pixelArray.length;
+        return height;
     }
 
     /**
-     * return the pixel at location (x,y)
+     * return the rgb value of the pixel at location (x,y)
      *
      * @param x column
      * @param y row
-     * @return the pixel at row y and column x
+     * @return the rgb value of the pixel at row y and column x
+     */
+    @Override
+    public int getRGB(int x, int y) {
+        if (y >= height || x >= width || y < 0 || x < 0) {
+            return DEFAULT_COLOR.getRGB();
+        }
+        return pixels[y * width + x];
+    }
+
+    /**
+     * copies a rectangle of the image into dest with one array copy per row
      */
     @Override
-    public Color getPixel(int x, int y) {
-        if(y>=pixelArray.length||x>=pixelArray[0].length||y<0||x<0){
-            return DEFAULT_COLOR;
+    public void copyRegion(int x, int y, int width, int height, int[] dest, int destOffset, int scanSize) {
+        if (x < 0 || y < 0 || x + width > this.width || y + height > this.height) {
+            /*part of the rectangle is outside of the image*/
+            Image.super.copyRegion(x, y, width, height, dest, destOffset, scanSize);
+            return;
+        }
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(pixels, (y + row) * this.width + x, dest, destOffset + row * scanSize, width);
         }
-        Color pixel = pixelArray[y][x];
-        return new Color(pixel.getRed(), pixel.getGreen(), pixel.getBlue());
     }
-}
\ No newline at end of file
+}
@@ -2,6 +2,9 @@ package image;
 
 import java.awt.*;
 import java.io.IOException;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 /**
@@ -10,12 +13,71 @@ import java.io.IOException;
  * @author Dan Nirel
  */
 public interface Image {
-    Color getPixel(int x, int y);
+    /**
+     * @param x column
+     * @param y row
+     * @return the packed rgb value (as in {@link Color#getRGB()}) of the pixel at location (x,y)
+     */
+    int getRGB(int x, int y);
+
+    /**
+     * @param x column
+     * @param y row
+     * @return the color of the pixel at location (x,y)
+     */
+    default Color getPixel(int x, int y) {
+        return new Color(getRGB(x, y));
+    }
 
     int getWidth();
 
     int getHeight();
 
+    /**
+     * the luminance of the pixel at location (x,y), by the weights of the red, green and blue channels
+     *
+     * @param x column
+     * @param y row
+     * @return luminance of the pixel, between 0 (black) and 1 (white)
+     */
+    default float luminance(int x, int y) {
+        int rgb = getRGB(x, y);
+        return (((rgb >> 16) & 0xff) * 0.2126f + ((rgb >> 8) & 0xff) * 0.7152f + (rgb & 0xff) * 0.0722f)
+                / 255f;
+    }
+
+    /**
+     * copies the packed rgb values of row y into dest, without allocating
+     *
+     * @param y          row to copy
+     * @param dest       array to copy into, must have room for getWidth() values from destOffset
+     * @param destOffset index in dest of the first pixel of the row
+     */
+    default void copyRow(int y, int[] dest, int destOffset) {
+        copyRegion(0, y, getWidth(), 1, dest, destOffset, getWidth());
+    }
+
+    /**
+     * copies the packed rgb values of a rectangle of the image into dest, row after row, without
+     * allocating
+     *
+     * @param x          column of the top left corner of the rectangle
+     * @param y          row of the top left corner of the rectangle
+     * @param width      width of the rectangle
+     * @param height     height of the rectangle
+     * @param dest       array to copy into
+     * @param destOffset index in dest of the top left pixel of the rectangle
+     * @param scanSize   distance in dest between the beginnings of two consecutive rows
+     */
+    default void copyRegion(int x, int y, int width, int height, int[] dest, int destOffset, int scanSize) {
+        for (int row = 0; row < height; row++) {
+            int offset = destOffset + row * scanSize;
+            for (int col = 0; col < width; col++) {
+                dest[offset + col] = getRGB(x + col, y + row);
+            }
+        }
+    }
+
     /**
      * Open an image from file. Each dimensions of the returned image is guaranteed
      * to be a power of 2, but the dimensions may be different.
@@ -26,7 +88,9 @@ public interface Image {
      */
     static Image fromFile(String filename) {
         try {
-            return new FileImage(filename);
+            FileImage image = new FileImage(filename);
+            return new PaddedImage(image, PaddedImage.paddedSize(image.getWidth()),
+                    PaddedImage.paddedSize(image.getHeight()));
         } catch (IOException ioe) {
             return null;
         }
@@ -51,4 +115,25 @@ public interface Image {
     default Iterable<Image> subImages(int edgeLength) {
         return new ImageIterator(this, edgeLength);
     }
+
+    /**
+     * Streams the packed rgb values of the pixels by order (first row, second row and so on). The stream
+     * splits evenly, so it may be made parallel.
+     *
+     * @return a sequential stream of the rgb values of the pixels
+     */
+    default IntStream rgbStream() {
+        return StreamSupport.intStream(new PixelSpliterator(this, 0, (long) getWidth() * getHeight()), false);
+    }
+
+    /**
+     * Streams the subImages by order (first row of subImages, second row and so on). The stream splits
+     * evenly, so it may be made parallel.
+     *
+     * @param edgeLength width and height of subImage- the edge length of the subImage square
+     * @return a sequential stream of the subImages of the image
+     */
+    default Stream<Image> subImageStream(int edgeLength) {
+        return StreamSupport.stream(new SubImageSpliterator(this, edgeLength), false);
+    }
 }
@@ -0,0 +1,131 @@
+package image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Reads an image file one band of rows at a time, so that an image larger than the memory can be
+ * processed. The bands are bands of the image padded to powers of 2, as in Image.fromFile.
+ * The file is decoded once, from top to bottom, when its reader writes the rows in order, see BandDecoder.
+ * Otherwise each band is decoded by itself.
+ */
+public class ImageBandReader implements Closeable {
+    private final ImageInputStream input;
+    private final ImageReader reader;
+    private final int origWidth;
+    private final int origHeight;
+    private final int width;
+    private final int height;
+
+    private ImageBandReader(ImageInputStream input, ImageReader reader) throws IOException {
+        this.input = input;
+        this.reader = reader;
+        origWidth = reader.getWidth(0);
+        origHeight = reader.getHeight(0);
+        width = PaddedImage.paddedSize(origWidth);
+        height = PaddedImage.paddedSize(origHeight);
+    }
+
+    /**
+     * Open an image file, reading only its dimensions.
+     *
+     * @param filename a path to an image file on disk
+     * @return a reader of the bands of the image
+     * @throws IOException if the file is not an image that can be read
+     */
+    public static ImageBandReader fromFile(String filename) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(new File(filename));
+        try {
+            ImageReader reader = ImageSource.readerOf(input, filename);
+            reader.setInput(input, false, true);
+            return new ImageBandReader(input, reader);
+        } catch (IOException e) {
+            if (input != null) {
+                input.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return width of the padded image
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height of the padded image
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * decodes the padded image by bands of rows, from top to bottom, and hands each band over as soon as
+     * its rows are decoded. only the rows of a band are kept in memory
+     *
+     * @param bandHeight number of rows in each band, but the last one that has the rows that are left
+     * @param consumer   receives the bands, images of the width of the padded image
+     * @throws IOException if the image can not be decoded
+     */
+    public void forEachBand(int bandHeight, Consumer<Image> consumer) throws IOException {
+        int rowsPadding = (height - origHeight) / 2;
+        int colsPadding = (width - origWidth) / 2;
+        /*the first band that has rows of the original image*/
+        int firstTop = rowsPadding / bandHeight * bandHeight;
+        for (int y = 0; y < firstTop; y += bandHeight) {
+            consumer.accept(readBand(y, bandHeight));
+        }
+        int[] nextTop = {firstTop};
+        BandDecoder.decode(reader, reader.getDefaultReadParam(), firstTop + bandHeight - rowsPadding,
+                bandHeight, (rows, top, numRows) -> {
+                    int y = nextTop[0];
+                    int bandRows = Math.min(bandHeight, height - y);
+                    consumer.accept(new PaddedImage(new FileImage(rows.getSubimage(0, 0, origWidth, numRows)),
+                            width, bandRows, colsPadding, top + rowsPadding - y));
+                    nextTop[0] = y + bandRows;
+                });
+        /*the bands that were not decoded in order, and the bands of the bottom padding*/
+        for (int y = nextTop[0]; y < height; y += bandHeight) {
+            consumer.accept(readBand(y, Math.min(bandHeight, height - y)));
+        }
+    }
+
+    /**
+     * decodes a band of rows of the padded image by itself. only the rows of the band are kept in memory
+     *
+     * @param y          top row of the band in the padded image
+     * @param bandHeight number of rows in the band
+     * @return an image of the width of the padded image and the height of the band
+     * @throws IOException if the band can not be decoded
+     */
+    private Image readBand(int y, int bandHeight) throws IOException {
+        int rowsPadding = (height - origHeight) / 2;
+        int colsPadding = (width - origWidth) / 2;
+        /*rows of the band in the original image*/
+        int top = Math.max(y - rowsPadding, 0);
+        int bottom = Math.min(y + bandHeight - rowsPadding, origHeight);
+        if (bottom <= top) {
+            /*all white*/
+            return new PaddedImage(new FileImage(new int[0], 0, 0), width, bandHeight);
+        }
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(0, top, origWidth, bottom - top));
+        return new PaddedImage(new FileImage(reader.read(0, param)), width, bandHeight, colsPadding,
+                top + rowsPadding - y);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.dispose();
+        input.close();
+    }
+}
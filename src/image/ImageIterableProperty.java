@@ -2,7 +2,6 @@ package image;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.function.BiFunction;
 
 /**
  * A package-private class of the package image.
@@ -10,11 +9,18 @@ import java.util.function.BiFunction;
  */
 class ImageIterableProperty<T> implements Iterable<T> {
     private final Image img;
-    private final BiFunction<Integer, Integer, T> propertySupplier;
+    private final PixelProperty<T> propertySupplier;
+
+    /**
+     * a property of the pixel at location (x,y), taking the coordinates without boxing them
+     */
+    interface PixelProperty<T> {
+        T apply(int x, int y);
+    }
 
     public ImageIterableProperty(
             Image img,
-            BiFunction<Integer, Integer, T> propertySupplier) {
+            PixelProperty<T> propertySupplier) {
         this.img = img;
         this.propertySupplier = propertySupplier;
     }
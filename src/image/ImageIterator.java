@@ -1,6 +1,7 @@
 package image;
 
 import java.util.Iterator;
+import java.util.Spliterators;
 
 /**
  * A package-private class of the package image.
@@ -8,7 +9,6 @@ import java.util.Iterator;
 class ImageIterator implements Iterable<Image> {
     private final Image image;
     private final int subImageWidth;
-    private final int subImageHeight;
 
     /**
      * constructs imageIterator object
@@ -18,7 +18,6 @@ class ImageIterator implements Iterable<Image> {
      */
     public ImageIterator(Image image, int edgeLength) {
         this.subImageWidth = edgeLength;
-        this.subImageHeight = edgeLength;
         this.image = image;
     }
 
@@ -28,25 +27,7 @@ class ImageIterator implements Iterable<Image> {
      */
     @Override
     public Iterator<Image> iterator() {
-        return new Iterator<>() {
-            int x = 0, y = 0;
-
-            @Override
-            public boolean hasNext() {
-                return y + subImageHeight <= image.getHeight();
-            }
-
-            @Override
-            public Image next() {
-                SubImage subImage1 = new SubImage(image, x, y, subImageWidth);
-                x += subImageWidth;
-                if (x + subImageWidth > image.getWidth()) {
-                    x = 0;
-                    y += subImageHeight;
-                }
-                return subImage1;
-            }
-        };
+        return Spliterators.iterator(new SubImageSpliterator(image, subImageWidth));
     }
 }
 
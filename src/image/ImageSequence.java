@@ -0,0 +1,382 @@
+package image;
+
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The frames of an animation: the images of a file that has many, such as an animated GIF, or the image
+ * files of a directory ordered by the number in their names. The frames are decoded ahead on a background
+ * thread, so that a frame can be processed while the next ones are decoded. Each frame is padded to powers
+ * of 2, as in Image.fromFile.
+ */
+public class ImageSequence implements AutoCloseable {
+    private static final String GIF_IMAGE_METADATA = "javax_imageio_gif_image_1.0";
+    private static final String GIF_STREAM_METADATA = "javax_imageio_gif_stream_1.0";
+    private static final String RESTORE_TO_BACKGROUND = "restoreToBackgroundColor";
+    private static final String RESTORE_TO_PREVIOUS = "restoreToPrevious";
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+    /*put in the queue after the last frame*/
+    private static final Object END = new Object();
+
+    private final FrameDecoder decoder;
+    private final BlockingQueue<Object> frames;
+    private final Thread decodingThread;
+    private boolean ended;
+
+    private ImageSequence(FrameDecoder decoder, int framesAhead) {
+        this.decoder = decoder;
+        this.frames = new ArrayBlockingQueue<>(framesAhead + 1);
+        this.decodingThread = new Thread(this::decodeAll, "image sequence decoder");
+        decodingThread.setDaemon(true);
+        decodingThread.start();
+    }
+
+    /**
+     * Open an animation
+     *
+     * @param path        an image file with many images, or a directory of image files that are numbered
+     *                    in their names
+     * @param framesAhead most frames to decode ahead of the frame that is processed
+     * @return the frames of the animation
+     * @throws IOException if the file or the directory can not be read
+     */
+    public static ImageSequence open(String path, int framesAhead) throws IOException {
+        File file = new File(path);
+        FrameDecoder decoder = file.isDirectory() ? new DirectoryDecoder(file) : new MultiImageDecoder(file);
+        return new ImageSequence(decoder, Math.max(1, framesAhead));
+    }
+
+    /**
+     * @return the next frame, or null after the last frame
+     * @throws IOException if the frame can not be decoded
+     */
+    public Image next() throws IOException {
+        if (ended) {
+            return null;
+        }
+        Object frame;
+        try {
+            frame = frames.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a frame", e);
+        }
+        if (frame == END) {
+            ended = true;
+            return null;
+        }
+        if (frame instanceof IOException) {
+            ended = true;
+            throw (IOException) frame;
+        }
+        return (Image) frame;
+    }
+
+    /**
+     * stops decoding the frames and releases the file
+     */
+    @Override
+    public void close() {
+        ended = true;
+        decodingThread.interrupt();
+        try {
+            decodingThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * decodes the frames into the queue until the last frame, a failure or an interrupt
+     */
+    private void decodeAll() {
+        try {
+            try {
+                while (decoder.hasNext()) {
+                    FileImage image = decoder.next();
+                    frames.put(new PaddedImage(image, PaddedImage.paddedSize(image.getWidth()),
+                            PaddedImage.paddedSize(image.getHeight())));
+                }
+                frames.put(END);
+            } catch (IOException e) {
+                frames.put(e);
+            } catch (RuntimeException | Error e) {
+                /*a corrupt frame can fail inside the reader, and the frames can run out of memory. the
+                failure is given to the thread that waits for the frames, instead of leaving it waiting*/
+                frames.put(new IOException("Failed to decode a frame: " + e, e));
+            } finally {
+                decoder.close();
+            }
+        } catch (InterruptedException e) {
+            /*closed*/
+        }
+    }
+
+    /**
+     * decodes the frames of an animation one after the other
+     */
+    private interface FrameDecoder {
+        boolean hasNext() throws IOException;
+
+        FileImage next() throws IOException;
+
+        void close();
+    }
+
+    /**
+     * decodes the images of a file. the frames of a GIF are drawn over the frames before them, at their
+     * position in the animation, as a GIF viewer does
+     */
+    private static class MultiImageDecoder implements FrameDecoder {
+        private static final int WHITE = Color.WHITE.getRGB();
+
+        private final ImageInputStream input;
+        private final ImageReader reader;
+        private int index;
+        /*packed rgb values of the animation so far, row after row, null before the first GIF frame*/
+        private int[] canvas;
+        private int canvasWidth;
+        private int canvasHeight;
+        /*the part of the canvas that the last frame is disposed of in, and how*/
+        private Rectangle lastFrameArea;
+        private String lastDisposal;
+        private int[] beforeLastFrame;
+        private int[] rowPixels;
+
+        MultiImageDecoder(File file) throws IOException {
+            input = ImageIO.createImageInputStream(file);
+            try {
+                reader = ImageSource.readerOf(input, file.getPath());
+                reader.setInput(input, false, false);
+            } catch (IOException e) {
+                if (input != null) {
+                    input.close();
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            int numImages = reader.getNumImages(false);
+            if (numImages != -1) {
+                return index < numImages;
+            }
+            try {
+                /*the number of images is not known before they are read*/
+                reader.getWidth(index);
+                return true;
+            } catch (IndexOutOfBoundsException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public FileImage next() throws IOException {
+            BufferedImage image = reader.read(index);
+            IIOMetadata metadata = reader.getImageMetadata(index);
+            index++;
+            boolean isGifFrame = metadata != null
+                    && GIF_IMAGE_METADATA.equals(metadata.getNativeMetadataFormatName());
+            Node gifFrame = isGifFrame ? metadata.getAsTree(GIF_IMAGE_METADATA) : null;
+            if (gifFrame == null) {
+                return new FileImage(image);
+            }
+            if (canvas == null) {
+                newCanvas(image);
+            }
+            disposeLastFrame();
+            Node descriptor = child(gifFrame, "ImageDescriptor");
+            Rectangle area = new Rectangle(intAttribute(descriptor, "imageLeftPosition"),
+                    intAttribute(descriptor, "imageTopPosition"), image.getWidth(), image.getHeight());
+            Node control = child(gifFrame, "GraphicControlExtension");
+            lastDisposal = control == null ? null : attribute(control, "disposalMethod");
+            lastFrameArea = area.intersection(new Rectangle(canvasWidth, canvasHeight));
+            beforeLastFrame = RESTORE_TO_PREVIOUS.equals(lastDisposal) ? canvas.clone() : null;
+            draw(image, area.x, area.y);
+            return new FileImage(canvas.clone(), canvasWidth, canvasHeight);
+        }
+
+        @Override
+        public void close() {
+            reader.dispose();
+            try {
+                input.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        /**
+         * creates a white canvas of the size of the animation, or of the first frame if it has no size
+         */
+        private void newCanvas(BufferedImage firstFrame) throws IOException {
+            canvasWidth = firstFrame.getWidth();
+            canvasHeight = firstFrame.getHeight();
+            IIOMetadata streamMetadata = reader.getStreamMetadata();
+            if (streamMetadata != null
+                    && GIF_STREAM_METADATA.equals(streamMetadata.getNativeMetadataFormatName())) {
+                Node screen = child(streamMetadata.getAsTree(GIF_STREAM_METADATA), "LogicalScreenDescriptor");
+                if (screen != null) {
+                    canvasWidth = Math.max(canvasWidth, intAttribute(screen, "logicalScreenWidth"));
+                    canvasHeight = Math.max(canvasHeight, intAttribute(screen, "logicalScreenHeight"));
+                }
+            }
+            canvas = new int[canvasWidth * canvasHeight];
+            Arrays.fill(canvas, WHITE);
+        }
+
+        /**
+         * draws the opaque pixels of a frame over the canvas. the pixels of a GIF are indexes into its
+         * palette, they are looked up without the color conversions of Graphics2D
+         */
+        private void draw(BufferedImage frame, int left, int top) {
+            int fromX = Math.max(0, -left), toX = Math.min(frame.getWidth(), canvasWidth - left);
+            if (fromX >= toX) {
+                return;
+            }
+            if (rowPixels == null || rowPixels.length < frame.getWidth()) {
+                rowPixels = new int[frame.getWidth()];
+            }
+            ColorModel colorModel = frame.getColorModel();
+            int[] palette = null;
+            if (colorModel instanceof IndexColorModel) {
+                palette = new int[((IndexColorModel) colorModel).getMapSize()];
+                ((IndexColorModel) colorModel).getRGBs(palette);
+            }
+            for (int y = Math.max(0, -top); y < Math.min(frame.getHeight(), canvasHeight - top); y++) {
+                if (palette != null) {
+                    frame.getRaster().getPixels(0, y, frame.getWidth(), 1, rowPixels);
+                } else {
+                    frame.getRGB(0, y, frame.getWidth(), 1, rowPixels, 0, frame.getWidth());
+                }
+                int offset = (top + y) * canvasWidth + left;
+                for (int x = fromX; x < toX; x++) {
+                    int argb = palette != null ? palette[rowPixels[x]] : rowPixels[x];
+                    if ((argb >>> 24) != 0) {
+                        /*the alpha channel is ignored otherwise, as in FileImage*/
+                        canvas[offset + x] = argb | 0xff000000;
+                    }
+                }
+            }
+        }
+
+        /**
+         * clears the area of the last frame, or restores the canvas from before it, as its disposal says
+         */
+        private void disposeLastFrame() {
+            if (RESTORE_TO_BACKGROUND.equals(lastDisposal)) {
+                for (int y = lastFrameArea.y; y < lastFrameArea.y + lastFrameArea.height; y++) {
+                    int offset = y * canvasWidth + lastFrameArea.x;
+                    Arrays.fill(canvas, offset, offset + lastFrameArea.width, WHITE);
+                }
+            } else if (RESTORE_TO_PREVIOUS.equals(lastDisposal) && beforeLastFrame != null) {
+                canvas = beforeLastFrame;
+            }
+        }
+
+        private static Node child(Node node, String name) {
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeName().equals(name)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        private static String attribute(Node node, String name) {
+            NamedNodeMap attributes = node.getAttributes();
+            Node attribute = attributes == null ? null : attributes.getNamedItem(name);
+            return attribute == null ? null : attribute.getNodeValue();
+        }
+
+        private static int intAttribute(Node node, String name) {
+            String value = node == null ? null : attribute(node, name);
+            return value == null ? 0 : Integer.parseInt(value);
+        }
+    }
+
+    /**
+     * decodes the image files of a directory, ordered by the first number in their names and then by name.
+     * files whose suffix is not of an image format that ImageIO reads, such as .DS_Store or Thumbs.db, are
+     * not frames
+     */
+    private static class DirectoryDecoder implements FrameDecoder {
+        private final List<File> files;
+        private int index;
+
+        DirectoryDecoder(File dir) throws IOException {
+            Set<String> suffixes = new HashSet<>();
+            for (String suffix : ImageIO.getReaderFileSuffixes()) {
+                suffixes.add(suffix.toLowerCase(Locale.ROOT));
+            }
+            File[] entries = dir.listFiles(file -> file.isFile()
+                    && suffixes.contains(suffixOf(file.getName())));
+            if (entries == null) {
+                throw new IOException("Can not list " + dir);
+            }
+            Arrays.sort(entries, (a, b) -> {
+                int byNumber = Long.compare(numberOf(a.getName()), numberOf(b.getName()));
+                return byNumber != 0 ? byNumber : a.getName().compareTo(b.getName());
+            });
+            files = new ArrayList<>(Arrays.asList(entries));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < files.size();
+        }
+
+        @Override
+        public FileImage next() throws IOException {
+            return new FileImage(files.get(index++).getPath());
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /**
+         * @return the suffix of the name after its last dot in lower case, or an empty string if it has none
+         */
+        private static String suffixOf(String name) {
+            int dot = name.lastIndexOf('.');
+            return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * @return the first number in the name, or -1 if it has none
+         */
+        private static long numberOf(String name) {
+            Matcher number = NUMBER.matcher(name);
+            if (!number.find()) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(number.group());
+            } catch (NumberFormatException e) {
+                return Long.MAX_VALUE;
+            }
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * An image file, or the contents of an image file, that is decoded only in as much detail as rendering it
+ * needs.
+ * The dimensions of the source are those of the padded image in full detail, and each resolution (number
+ * of chars in a row) gets an image whose dimensions are a power of 2 fraction of them, so that every char
+ * stands for the same part of the image in any detail.
+ */
+public class ImageSource implements AutoCloseable {
+    /*pixels of the decoded image along the edge of each char, at least*/
+    private static final int MIN_PIXELS_PER_CHAR = 8;
+    private static final int NO_SUBSAMPLING = 1;
+    /*pixels of a band of rows that is decoded to native memory at a time*/
+    private static final int OFF_HEAP_BAND_PIXELS = 1 << 20;
+    /*pixels of a band of rows that is decoded to native memory at a time when the reader decodes a region
+    of the file at each read*/
+    private static final int OFF_HEAP_REGION_PIXELS = 1 << 22;
+
+    private final String filename;
+    /*contents of the image file, null if it is read from filename*/
+    private final byte[] bytes;
+    private final int width;
+    private final int height;
+    /*decoded images of the file, null to always decode it*/
+    private PixelCache pixelCache;
+    /*decode to native memory instead of the heap*/
+    private boolean offHeap;
+    /*the decoded image that image pads, closed when it is replaced*/
+    private Image decoded;
+    private Image image;
+    /*keep one of every subsampling pixels of image in each direction*/
+    private int subsampling;
+
+    private ImageSource(String filename, byte[] bytes, int width, int height, Image image, int subsampling) {
+        this.filename = filename;
+        this.bytes = bytes;
+        this.width = width;
+        this.height = height;
+        this.image = image;
+        this.subsampling = subsampling;
+    }
+
+    /**
+     * Open an image file, reading only its dimensions. The pixels are decoded by forCharsInRow.
+     *
+     * @param filename a path to an image file on disk
+     * @return the source of the image if the file is an image that can be read, null otherwise
+     */
+    public static ImageSource fromFile(String filename) {
+        return open(filename, null);
+    }
+
+    /**
+     * Open the contents of an image file, reading only its dimensions. The pixels are decoded by
+     * forCharsInRow.
+     *
+     * @param bytes contents of an image file, kept by the source
+     * @return the source of the image if the bytes are an image that can be read, null otherwise
+     */
+    public static ImageSource fromBytes(byte[] bytes) {
+        return open(null, bytes);
+    }
+
+    private static ImageSource open(String filename, byte[] bytes) {
+        try (ImageInputStream input = createInput(filename, bytes)) {
+            ImageReader reader = readerOf(input, nameOf(filename));
+            try {
+                reader.setInput(input, true, true);
+                return new ImageSource(filename, bytes, PaddedImage.paddedSize(reader.getWidth(0)),
+                        PaddedImage.paddedSize(reader.getHeight(0)), null, 0);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * @param image an image that is already in memory
+     * @return a source that always gives this image
+     */
+    public static ImageSource of(Image image) {
+        return new ImageSource(null, null, image.getWidth(), image.getHeight(), image, NO_SUBSAMPLING);
+    }
+
+    /**
+     * sets a cache of decoded images, so that the file is mapped to memory instead of being decoded if it
+     * was decoded before in the same detail. has no effect on sources that are not files
+     *
+     * @param pixelCache cache of decoded images, or null to always decode the file
+     */
+    public void setPixelCache(PixelCache pixelCache) {
+        this.pixelCache = pixelCache;
+    }
+
+    /**
+     * sets whether the image is decoded to native memory, outside of the heap, without the whole image on
+     * the heap at any time. an image in native memory is closed as soon as another image is decoded or the
+     * source is closed, and must not be used after that. it is decoded to the heap instead if the images in
+     * native memory take too much of it, see OffHeapImage. has no effect on sources that are not files or
+     * contents of files
+     *
+     * @param offHeap true to decode to native memory
+     */
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * closes the decoded image if it is in native memory
+     */
+    @Override
+    public void close() {
+        if (decoded instanceof OffHeapImage) {
+            ((OffHeapImage) decoded).close();
+        }
+        decoded = null;
+        if (filename != null || bytes != null) {
+            image = null;
+        }
+    }
+
+    /**
+     * @return width of the padded image in full detail
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height of the padded image in full detail
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gives an image with enough detail to render charsInRow chars in each row. The image that was given
+     * last is given again if the resolution needs the same detail, otherwise the file is decoded again in
+     * that detail, so that the image depends only on charsInRow.
+     *
+     * @param charsInRow number of chars in a row of the rendered image
+     * @return an image whose width is divided by charsInRow like the width of the source
+     * @throws IOException if the file or bytes can not be decoded again
+     */
+    public Image forCharsInRow(int charsInRow) throws IOException {
+        if (filename == null && bytes == null) {
+            return image;
+        }
+        /*the largest power of 2 that leaves MIN_PIXELS_PER_CHAR pixels along each char*/
+        int pixelsPerChar = Math.max(1, width / Math.max(1, charsInRow));
+        int newSubsampling = Math.max(NO_SUBSAMPLING,
+                Integer.highestOneBit(pixelsPerChar / MIN_PIXELS_PER_CHAR));
+        if (image == null || newSubsampling != subsampling) {
+            Image newDecoded = decode(newSubsampling);
+            close();
+            decoded = newDecoded;
+            image = new PaddedImage(decoded, width / newSubsampling, height / newSubsampling);
+            subsampling = newSubsampling;
+        }
+        return image;
+    }
+
+    /**
+     * decodes the image, or maps it from the pixel cache if it was decoded before
+     */
+    private Image decode(int subsampling) throws IOException {
+        if (pixelCache == null || filename == null) {
+            Image offHeapImage = offHeap ? readOffHeap(subsampling) : null;
+            /*on the heap if the images in native memory take too much of it already*/
+            return offHeapImage != null ? offHeapImage : new FileImage(read(subsampling));
+        }
+        Image cached = pixelCache.load(filename, subsampling);
+        if (cached != null) {
+            return cached;
+        }
+        /*the mapped file is outside of the heap already*/
+        return pixelCache.store(filename, subsampling, new FileImage(read(subsampling)));
+    }
+
+    /**
+     * decodes the file, keeping one of every subsampling pixels in each direction
+     */
+    private BufferedImage read(int subsampling) throws IOException {
+        try (ImageInputStream input = createInput(filename, bytes)) {
+            ImageReader reader = readerOf(input, nameOf(filename));
+            try {
+                reader.setInput(input, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * decodes the file to native memory a band of rows at a time, so that the whole image is never on the
+     * heap. the file is decoded once if its reader writes its rows in order, see BandDecoder, and otherwise
+     * the rows that are left are decoded by regions of the file
+     *
+     * @return the decoded image, or null if it does not fit in native memory
+     */
+    private OffHeapImage readOffHeap(int subsampling) throws IOException {
+        OffHeapImage image = null;
+        try {
+            int decodedRows = 0;
+            try (ImageInputStream input = createInput(filename, bytes)) {
+                ImageReader reader = readerOf(input, nameOf(filename));
+                try {
+                    reader.setInput(input, true, true);
+                    int width = (reader.getWidth(0) + subsampling - 1) / subsampling;
+                    int height = (reader.getHeight(0) + subsampling - 1) / subsampling;
+                    image = OffHeapImage.allocate(width, height);
+                    if (image == null) {
+                        return null;
+                    }
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                    int bandRows = Math.max(1, OFF_HEAP_BAND_PIXELS / width);
+                    OffHeapImage decoded = image;
+                    decodedRows = BandDecoder.decode(reader, param, bandRows, bandRows,
+                            (rows, top, numRows) -> decoded.setRows(rows, top, numRows));
+                } finally {
+                    reader.dispose();
+                }
+            }
+            if (decodedRows < image.getHeight()) {
+                readRegions(image, subsampling, decodedRows);
+            }
+            return image;
+        } catch (IOException | RuntimeException e) {
+            if (image != null) {
+                image.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * decodes the rows of image from top on, a region of the file at a time
+     */
+    private void readRegions(OffHeapImage image, int subsampling, int top) throws IOException {
+        try (ImageInputStream input = createInput(filename, bytes)) {
+            ImageReader reader = readerOf(input, nameOf(filename));
+            try {
+                /*the stream is read again from the image at each region*/
+                reader.setInput(input, false, true);
+                int origWidth = reader.getWidth(0), origHeight = reader.getHeight(0);
+                int regionRows = Math.max(1, OFF_HEAP_REGION_PIXELS / image.getWidth());
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                for (int y = top; y < image.getHeight(); y += regionRows) {
+                    int origTop = y * subsampling;
+                    param.setSourceRegion(new Rectangle(0, origTop, origWidth,
+                            Math.min(regionRows * subsampling, origHeight - origTop)));
+                    BufferedImage rows = reader.read(0, param);
+                    image.setRows(rows, y, rows.getHeight());
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * @return a stream of the file, or of the bytes if there is no file
+     */
+    private static ImageInputStream createInput(String filename, byte[] bytes) throws IOException {
+        return filename != null ? ImageIO.createImageInputStream(new File(filename)) :
+                ImageIO.createImageInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * @return name of the image for error messages
+     */
+    private static String nameOf(String filename) {
+        return filename != null ? filename : "image bytes";
+    }
+
+    /**
+     * @return a reader of the image in input
+     * @throws IOException if there is no reader for the image
+     */
+    static ImageReader readerOf(ImageInputStream input, String filename) throws IOException {
+        if (input == null) {
+            throw new IOException("Can not read " + filename);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format: " + filename);
+        }
+        return readers.next();
+    }
+}
@@ -0,0 +1,69 @@
+package image;
+
+import java.awt.*;
+import java.nio.IntBuffer;
+
+/**
+ * A package-private class of the package image.
+ * An image whose packed rgb values are read straight from a buffer, such as a file mapped to memory, and
+ * are never copied to the heap as a whole.
+ */
+class MappedImage implements Image {
+    private static final int DEFAULT_RGB = Color.WHITE.getRGB();
+
+    private final IntBuffer pixels;
+    private final int width;
+    private final int height;
+
+    /**
+     * constructor of MappedImage
+     *
+     * @param pixels packed rgb values, row after row, from index 0
+     * @param width  width of the image
+     * @param height height of the image
+     */
+    MappedImage(IntBuffer pixels, int width, int height) {
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public int getRGB(int x, int y) {
+        if (y >= height || x >= width || y < 0 || x < 0) {
+            return DEFAULT_RGB;
+        }
+        return pixels.get(y * width + x);
+    }
+
+    /**
+     * copies a rectangle of the image into dest with one bulk read per row
+     */
+    @Override
+    public void copyRegion(int x, int y, int width, int height, int[] dest, int destOffset, int scanSize) {
+        if (x < 0 || y < 0 || x + width > this.width || y + height > this.height) {
+            /*part of the rectangle is outside of the image*/
+            Image.super.copyRegion(x, y, width, height, dest, destOffset, scanSize);
+            return;
+        }
+        for (int row = 0; row < height; row++) {
+            pixels.get((y + row) * this.width + x, dest, destOffset + row * scanSize, width);
+        }
+    }
+
+    /**
+     * @return width of image
+     */
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height of image
+     */
+    @Override
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,206 @@
+package image;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.logging.Logger;
+
+/**
+ * A package-private class of the package image.
+ * The packed rgb values of the pixels of an image in native memory, outside of the heap, counted row after
+ * row from the top left pixel. The memory is freed at once by free.
+ * The pixels are kept in a memory segment of the incubating foreign memory API when it is present. Its
+ * implementation is compiled apart from the other sources, from src-foreign, as it needs the
+ * jdk.incubator.foreign module of Java 17. Otherwise they are kept in direct buffers of whole rows, that are
+ * freed through sun.misc.Unsafe.
+ */
+abstract class NativePixels {
+    private static final String FOREIGN_MODULE = "jdk.incubator.foreign";
+    private static final String SEGMENT_PIXELS = "image.SegmentPixels";
+    /*constructor of the segment pixels from the width and the height, null if they can not be used*/
+    private static final Constructor<?> SEGMENT_PIXELS_CONSTRUCTOR = segmentPixelsConstructor();
+
+    /**
+     * @param index index of a pixel
+     * @return packed rgb value of the pixel
+     */
+    abstract int get(long index);
+
+    /**
+     * copies pixels of a row to dest
+     *
+     * @param index      index of the first pixel
+     * @param dest       array to copy to
+     * @param destOffset index in dest of the first pixel
+     * @param length     number of pixels, that are all in the row of the first pixel
+     */
+    abstract void get(long index, int[] dest, int destOffset, int length);
+
+    /**
+     * copies pixels of a row from src
+     *
+     * @param index     index of the first pixel
+     * @param src       array to copy from
+     * @param srcOffset index in src of the first pixel
+     * @param length    number of pixels, that are all in the row of the first pixel
+     */
+    abstract void put(long index, int[] src, int srcOffset, int length);
+
+    /**
+     * frees the memory of the pixels at once, they must not be used after that
+     */
+    abstract void free();
+
+    /**
+     * @param width  width of the image
+     * @param height height of the image
+     * @return the pixels of the image, zeroed, or null if native memory can not be freed at once
+     * @throws OutOfMemoryError if there is not enough native memory
+     */
+    static NativePixels allocate(int width, int height) {
+        if (SEGMENT_PIXELS_CONSTRUCTOR != null) {
+            try {
+                return (NativePixels) SEGMENT_PIXELS_CONSTRUCTOR.newInstance(width, height);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof OutOfMemoryError) {
+                    throw (OutOfMemoryError) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return DirectPixels.allocate(width, height);
+    }
+
+    /**
+     * @return the constructor of the segment pixels if they were compiled and the foreign memory module of
+     * Java 17 is present, null otherwise
+     */
+    private static Constructor<?> segmentPixelsConstructor() {
+        if (ModuleLayer.boot().findModule(FOREIGN_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            /*loaded by name, so that the other sources compile and run without the module*/
+            Constructor<?> constructor = Class.forName(SEGMENT_PIXELS).getDeclaredConstructor(int.class,
+                    int.class);
+            /*the incubating api changes between releases, a pixel shows that this one links*/
+            NativePixels pixel = (NativePixels) constructor.newInstance(1, 1);
+            pixel.put(0, new int[1], 0, 1);
+            pixel.get(0);
+            pixel.free();
+            return constructor;
+        } catch (ClassNotFoundException e) {
+            /*built without src-foreign*/
+        } catch (ReflectiveOperationException | LinkageError e) {
+            Logger.getGlobal().warning("Failed to load the foreign memory pixels, using direct buffers");
+        }
+        return null;
+    }
+
+    /**
+     * Pixels in direct buffers of whole rows, each of at most Integer.MAX_VALUE bytes, so that images of
+     * more bytes than a buffer holds are kept too.
+     */
+    static class DirectPixels extends NativePixels {
+        private static final int MAX_BUFFER_PIXELS = Integer.MAX_VALUE / Integer.BYTES;
+        /*the unsafe and its invokeCleaner, that frees the memory of a direct buffer, null if not present*/
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                unsafe = theUnsafe.get(null);
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                /*a runtime without the jdk.unsupported module*/
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+        }
+
+        private final int width;
+        private final int rowsPerBuffer;
+        private final ByteBuffer[] buffers;
+        /*views of the buffers*/
+        private final IntBuffer[] pixels;
+
+        private DirectPixels(int width, int height) {
+            this.width = width;
+            rowsPerBuffer = MAX_BUFFER_PIXELS / Math.max(1, width);
+            int numBuffers = (height + rowsPerBuffer - 1) / rowsPerBuffer;
+            buffers = new ByteBuffer[numBuffers];
+            pixels = new IntBuffer[numBuffers];
+            try {
+                for (int i = 0; i < numBuffers; i++) {
+                    int rows = Math.min(rowsPerBuffer, height - i * rowsPerBuffer);
+                    buffers[i] = ByteBuffer.allocateDirect(rows * width * Integer.BYTES)
+                            .order(ByteOrder.nativeOrder());
+                    pixels[i] = buffers[i].asIntBuffer();
+                }
+            } catch (OutOfMemoryError e) {
+                free();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the pixels, or null if the memory of direct buffers can not be freed at once or a row is
+         * larger than a buffer
+         */
+        static DirectPixels allocate(int width, int height) {
+            if (INVOKE_CLEANER == null || width > MAX_BUFFER_PIXELS) {
+                return null;
+            }
+            return new DirectPixels(width, height);
+        }
+
+        @Override
+        int get(long index) {
+            int row = (int) (index / width);
+            return pixels[row / rowsPerBuffer].get(pixelInBuffer(row, index));
+        }
+
+        @Override
+        void get(long index, int[] dest, int destOffset, int length) {
+            int row = (int) (index / width);
+            pixels[row / rowsPerBuffer].get(pixelInBuffer(row, index), dest, destOffset, length);
+        }
+
+        @Override
+        void put(long index, int[] src, int srcOffset, int length) {
+            int row = (int) (index / width);
+            pixels[row / rowsPerBuffer].put(pixelInBuffer(row, index), src, srcOffset, length);
+        }
+
+        /**
+         * @return index of the pixel in the buffer of its row
+         */
+        private int pixelInBuffer(int row, long index) {
+            return (int) (index - (long) (row - row % rowsPerBuffer) * width);
+        }
+
+        @Override
+        void free() {
+            for (int i = 0; i < buffers.length && buffers[i] != null; i++) {
+                try {
+                    INVOKE_CLEANER.invoke(UNSAFE, buffers[i]);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+                buffers[i] = null;
+                pixels[i] = null;
+            }
+        }
+    }
+}
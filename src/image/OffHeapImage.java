@@ -0,0 +1,161 @@
+package image;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An image whose packed rgb values are kept in native memory, outside of the heap, so that a large image
+ * does not burden the garbage collector. The image must not be used after it is closed. Closing it frees
+ * its native memory, and at most MAX_BYTES of native memory are given to the images that are not closed.
+ * See NativePixels for how the memory is kept.
+ */
+public class OffHeapImage implements Image, AutoCloseable {
+    private static final int DEFAULT_RGB = Color.WHITE.getRGB();
+    /*system property of the most bytes of the images in native memory that are not closed*/
+    private static final String MAX_BYTES_PROPERTY = "ascii_art.offHeapBytes";
+    private static final long MAX_BYTES = Long.getLong(MAX_BYTES_PROPERTY, 1L << 30);
+    /*bytes of the images that are not closed*/
+    private static final AtomicLong allocatedBytes = new AtomicLong();
+
+    private final int width;
+    private final int height;
+    private final long bytes;
+    /*pixels in native memory, null after close*/
+    private NativePixels pixels;
+
+    private OffHeapImage(int width, int height, long bytes, NativePixels pixels) {
+        this.width = width;
+        this.height = height;
+        this.bytes = bytes;
+        this.pixels = pixels;
+    }
+
+    /**
+     * reserves the native memory of an image, if it fits in MAX_BYTES. the pixels are black until they are
+     * set
+     *
+     * @return the image, or null if it does not fit or native memory can not be freed at once
+     */
+    static OffHeapImage allocate(int width, int height) {
+        long bytes = (long) width * height * Integer.BYTES;
+        if (allocatedBytes.addAndGet(bytes) > MAX_BYTES) {
+            allocatedBytes.addAndGet(-bytes);
+            return null;
+        }
+        NativePixels pixels;
+        try {
+            pixels = NativePixels.allocate(width, height);
+        } catch (OutOfMemoryError e) {
+            /*beyond -XX:MaxDirectMemorySize*/
+            pixels = null;
+        }
+        if (pixels == null) {
+            allocatedBytes.addAndGet(-bytes);
+            return null;
+        }
+        return new OffHeapImage(width, height, bytes, pixels);
+    }
+
+    /**
+     * @param image image to copy
+     * @return a copy of the image in native memory, or null if the images in native memory would take more
+     * than MAX_BYTES
+     */
+    public static OffHeapImage copyOf(Image image) {
+        OffHeapImage copy = allocate(image.getWidth(), image.getHeight());
+        if (copy == null) {
+            return null;
+        }
+        int[] rowPixels = new int[image.getWidth()];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.copyRow(y, rowPixels, 0);
+            copy.pixels.put((long) y * copy.width, rowPixels, 0, copy.width);
+        }
+        return copy;
+    }
+
+    /**
+     * copies decoded rows into the image, the alpha channel is ignored as in FileImage
+     *
+     * @param rows    decoded image, as wide as this image, not kept after the copy
+     * @param top     row of this image of the first row of rows
+     * @param numRows number of rows to copy, from the first row of rows
+     */
+    void setRows(BufferedImage rows, int top, int numRows) {
+        NativePixels pixels = open();
+        int[] rowPixels = new int[width];
+        for (int y = 0; y < numRows; y++) {
+            rows.getRGB(0, y, width, 1, rowPixels, 0, width);
+            for (int x = 0; x < width; x++) {
+                rowPixels[x] |= 0xff000000;
+            }
+            pixels.put((long) (top + y) * width, rowPixels, 0, width);
+        }
+    }
+
+    @Override
+    public int getRGB(int x, int y) {
+        if (y >= height || x >= width || y < 0 || x < 0) {
+            return DEFAULT_RGB;
+        }
+        return open().get((long) y * width + x);
+    }
+
+    /**
+     * copies a rectangle of the image into dest with one bulk read per row
+     */
+    @Override
+    public void copyRegion(int x, int y, int width, int height, int[] dest, int destOffset, int scanSize) {
+        if (x < 0 || y < 0 || x + width > this.width || y + height > this.height) {
+            /*part of the rectangle is outside of the image*/
+            Image.super.copyRegion(x, y, width, height, dest, destOffset, scanSize);
+            return;
+        }
+        NativePixels pixels = open();
+        for (int row = 0; row < height; row++) {
+            pixels.get((long) (y + row) * this.width + x, dest, destOffset + row * scanSize, width);
+        }
+    }
+
+    /**
+     * @return width of image
+     */
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height of image
+     */
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * frees the native memory of the image. it must not be called while the image is read by another thread
+     */
+    @Override
+    public void close() {
+        if (pixels == null) {
+            return;
+        }
+        pixels.free();
+        pixels = null;
+        allocatedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * @return the pixels of the image
+     * @throws IllegalStateException if the image is closed
+     */
+    private NativePixels open() {
+        NativePixels pixels = this.pixels;
+        if (pixels == null) {
+            throw new IllegalStateException("the image is closed");
+        }
+        return pixels;
+    }
+}
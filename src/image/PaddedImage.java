@@ -0,0 +1,103 @@
+package image;
+
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * A package-private class of the package image.
+ * A view of an image in the middle of a larger white image. The white padding is not stored, a pixel is
+ * white when it is out of the range of the padded image.
+ */
+class PaddedImage implements Image {
+    private static final int DEFAULT_RGB = Color.WHITE.getRGB();
+
+    private final Image image;
+    private final int width;
+    private final int height;
+    private final int colsPadding;
+    private final int rowsPadding;
+
+    /**
+     * constructor of PaddedImage, with the image in the middle of the padded image
+     *
+     * @param image  image to pad
+     * @param width  width of the padded image, at least the width of image
+     * @param height height of the padded image, at least the height of image
+     */
+    PaddedImage(Image image, int width, int height) {
+        this(image, width, height, (width - image.getWidth()) / 2, (height - image.getHeight()) / 2);
+    }
+
+    /**
+     * constructor of PaddedImage
+     *
+     * @param image       image to pad
+     * @param width       width of the padded image
+     * @param height      height of the padded image
+     * @param colsPadding column of the padded image that the left column of image is at
+     * @param rowsPadding row of the padded image that the top row of image is at
+     */
+    PaddedImage(Image image, int width, int height, int colsPadding, int rowsPadding) {
+        this.image = image;
+        this.width = width;
+        this.height = height;
+        this.colsPadding = colsPadding;
+        this.rowsPadding = rowsPadding;
+    }
+
+    /**
+     * @param size width or height of an image
+     * @return the size of the image after padding it to a power of 2
+     */
+    static int paddedSize(int size) {
+        return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    @Override
+    public int getRGB(int x, int y) {
+        int imageCol = x - colsPadding, imageRow = y - rowsPadding;
+        if (imageCol < 0 || imageRow < 0 || imageCol >= image.getWidth() || imageRow >= image.getHeight()) {
+            return DEFAULT_RGB;
+        }
+        return image.getRGB(imageCol, imageRow);
+    }
+
+    /**
+     * copies the rectangle row by row: the white part of each row is filled, and the rest is copied from
+     * the padded image
+     */
+    @Override
+    public void copyRegion(int x, int y, int width, int height, int[] dest, int destOffset, int scanSize) {
+        /*columns of the rectangle that are in the padded image*/
+        int fromCol = Math.max(x, colsPadding);
+        int toCol = Math.min(x + width, colsPadding + image.getWidth());
+        for (int row = y; row < y + height; row++) {
+            int offset = destOffset + (row - y) * scanSize;
+            int imageRow = row - rowsPadding;
+            if (fromCol >= toCol || imageRow < 0 || imageRow >= image.getHeight()) {
+                Arrays.fill(dest, offset, offset + width, DEFAULT_RGB);
+                continue;
+            }
+            Arrays.fill(dest, offset, offset + fromCol - x, DEFAULT_RGB);
+            image.copyRegion(fromCol - colsPadding, imageRow, toCol - fromCol, 1, dest,
+                    offset + fromCol - x, scanSize);
+            Arrays.fill(dest, offset + toCol - x, offset + width, DEFAULT_RGB);
+        }
+    }
+
+    /**
+     * @return width of the padded image
+     */
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height of the padded image
+     */
+    @Override
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,216 @@
+package image;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A directory of decoded images, so that an image file that was decoded before is mapped to memory instead
+ * of being decoded again. A decoded image is kept in a raw file: a header of a magic number, the width and
+ * the height, then the packed rgb values row after row, all in the native byte order so that the pixels are
+ * read without swapping their bytes. The file is named by the path, size and last modification time of the
+ * image file and by the subsampling it was decoded at, so a changed image file is decoded again. The least
+ * recently used files are deleted when they take more than a given number of bytes.
+ */
+public class PixelCache {
+    /*read in the native byte order, so a file of a machine of the other byte order is not recognized*/
+    private static final int MAGIC = 0x41415059;
+    private static final int HEADER_BYTES = 3 * Integer.BYTES;
+    /*most bytes of a file, as a buffer that a file is mapped to is indexed by an int*/
+    private static final long MAX_FILE_BYTES = Integer.MAX_VALUE;
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final String SUFFIX = ".pix";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File dir;
+    private final long maxBytes;
+    /*sizes of the files by their names, in access order*/
+    private final LinkedHashMap<String, Long> files;
+    private long bytes;
+
+    /**
+     * constructor of PixelCache. the images that are already in the directory are kept, the least recently
+     * modified ones first to be deleted, and the files of images that were never fully written are deleted
+     *
+     * @param dir      directory of the decoded images, created if needed
+     * @param maxBytes most bytes of the files in the directory
+     * @throws IOException if the directory can not be created
+     */
+    public PixelCache(File dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.files = new LinkedHashMap<>(16, 0.75f, true);
+        Files.createDirectories(dir.toPath());
+        File[] temps = dir.listFiles((d, name) -> name.endsWith(TEMP_SUFFIX));
+        if (temps != null) {
+            for (File temp : temps) {
+                temp.delete();
+            }
+        }
+        File[] cached = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (cached != null) {
+            Arrays.sort(cached, Comparator.comparingLong(File::lastModified));
+            for (File file : cached) {
+                files.put(file.getName(), file.length());
+                bytes += file.length();
+            }
+        }
+    }
+
+    /**
+     * @param filename    image file
+     * @param subsampling one of every subsampling pixels in each direction that the image was decoded at
+     * @return the decoded image mapped to memory, or null if it was not cached or can not be read
+     */
+    Image load(String filename, int subsampling) {
+        File cached;
+        try {
+            cached = cacheFile(filename, subsampling);
+        } catch (IOException e) {
+            return null;
+        }
+        synchronized (this) {
+            if (files.get(cached.getName()) == null) {
+                return null;
+            }
+        }
+        try (FileChannel channel = FileChannel.open(cached.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > MAX_FILE_BYTES) {
+                return null;
+            }
+            /*the mapping stays valid after the channel is closed*/
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.nativeOrder());
+            if (buffer.getInt(0) != MAGIC) {
+                return null;
+            }
+            int width = buffer.getInt(Integer.BYTES);
+            int height = buffer.getInt(2 * Integer.BYTES);
+            if ((long) width * height * Integer.BYTES != buffer.capacity() - HEADER_BYTES) {
+                return null;
+            }
+            IntBuffer pixels = buffer.position(HEADER_BYTES).slice().order(ByteOrder.nativeOrder())
+                    .asIntBuffer();
+            /*the file is the most recently used again after a restart too*/
+            cached.setLastModified(System.currentTimeMillis());
+            return new MappedImage(pixels, width, height);
+        } catch (IOException e) {
+            /*deleted by an eviction meanwhile, or broken*/
+            return null;
+        }
+    }
+
+    /**
+     * writes a decoded image to the cache, and maps it back to memory, then deletes the least recently used
+     * files until the files fit. an image whose file would take more than the bytes of the cache, or more
+     * than a buffer can map, is not cached
+     *
+     * @param filename    image file
+     * @param subsampling one of every subsampling pixels in each direction that the image was decoded at
+     * @param image       the decoded image
+     * @return the image mapped to memory, or image if it could not be cached
+     */
+    Image store(String filename, int subsampling, Image image) {
+        int width = image.getWidth();
+        long fileBytes = HEADER_BYTES + (long) width * image.getHeight() * Integer.BYTES;
+        if (fileBytes > Math.min(maxBytes, MAX_FILE_BYTES)) {
+            return image;
+        }
+        Path temp = null;
+        try {
+            File cached = cacheFile(filename, subsampling);
+            temp = Files.createTempFile(dir.toPath(), cached.getName(), TEMP_SUFFIX);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+                header.putInt(MAGIC).putInt(width).putInt(image.getHeight()).flip();
+                writeFully(channel, header);
+                int[] rowPixels = new int[width];
+                ByteBuffer row = ByteBuffer.allocate(width * Integer.BYTES).order(ByteOrder.nativeOrder());
+                for (int y = 0; y < image.getHeight(); y++) {
+                    image.copyRow(y, rowPixels, 0);
+                    row.clear();
+                    row.asIntBuffer().put(rowPixels);
+                    writeFully(channel, row);
+                }
+            }
+            /*moved into place whole, so that a file is never mapped while it is written*/
+            Files.move(temp, cached.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            added(cached.getName(), fileBytes);
+            Image mapped = load(filename, subsampling);
+            return mapped != null ? mapped : image;
+        } catch (IOException e) {
+            if (temp != null) {
+                temp.toFile().delete();
+            }
+            return image;
+        }
+    }
+
+    /**
+     * records a file that was moved into the directory, and deletes the least recently used files until the
+     * files fit
+     */
+    private synchronized void added(String name, long fileBytes) {
+        Long replaced = files.put(name, fileBytes);
+        bytes += fileBytes - (replaced == null ? 0 : replaced);
+        Iterator<Map.Entry<String, Long>> eldest = files.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            if (entry.getKey().equals(name)) {
+                break;
+            }
+            /*an image that is mapped stays readable until it is unmapped*/
+            new File(dir, entry.getKey()).delete();
+            bytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * @return the file of the image decoded at the subsampling
+     * @throws IOException if the image file can not be found
+     */
+    private File cacheFile(String filename, int subsampling) throws IOException {
+        File file = new File(filename);
+        if (!file.isFile()) {
+            throw new IOException("Can not read " + filename);
+        }
+        String key = file.getCanonicalPath() + "|" + file.length() + "|" + file.lastModified() + "|" +
+                subsampling;
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            /*every java platform has SHA-256*/
+            throw new IllegalStateException(e);
+        }
+        StringBuilder name = new StringBuilder();
+        for (byte b : digest.digest(key.getBytes(StandardCharsets.UTF_8))) {
+            name.append(String.format("%02x", b));
+        }
+        return new File(dir, name.append(SUFFIX).toString());
+    }
+}
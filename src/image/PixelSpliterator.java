@@ -0,0 +1,77 @@
+package image;
+
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+
+/**
+ * A package-private class of the package image.
+ * Splittable traversal of the packed rgb values of an image's pixels, by order (first row, second row and
+ * so on), without boxing.
+ */
+class PixelSpliterator implements Spliterator.OfInt {
+    private static final int CHARACTERISTICS = ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+
+    private final Image image;
+    private final int width;
+    /*counted in longs, images may have more pixels than an int counts*/
+    private long index;
+    private final long end;
+    /*the current row, copied when traversing in bulk*/
+    private int[] rowPixels;
+
+    /**
+     * constructs a spliterator of the pixels [index, end) of the image, counted row after row
+     */
+    PixelSpliterator(Image image, long index, long end) {
+        this.image = image;
+        this.width = image.getWidth();
+        this.index = index;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(IntConsumer action) {
+        if (index >= end) {
+            return false;
+        }
+        action.accept(image.getRGB((int) (index % width), (int) (index / width)));
+        index++;
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(IntConsumer action) {
+        if (rowPixels == null) {
+            rowPixels = new int[width];
+        }
+        while (index < end) {
+            int y = (int) (index / width);
+            long rowEnd = Math.min(end, (y + 1L) * width);
+            image.copyRow(y, rowPixels, 0);
+            for (int x = (int) (index % width); index < rowEnd; x++, index++) {
+                action.accept(rowPixels[x]);
+            }
+        }
+    }
+
+    @Override
+    public Spliterator.OfInt trySplit() {
+        long middle = (index + end) >>> 1;
+        if (middle <= index) {
+            return null;
+        }
+        PixelSpliterator prefix = new PixelSpliterator(image, index, middle);
+        index = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+}
@@ -1,8 +1,5 @@
 package image;
 
-import java.awt.*;
-
-
 public class SubImage implements Image {
     private final int row;
     private final int col;
@@ -21,12 +18,11 @@ public class SubImage implements Image {
     /**
      * @param x location of left top corner of the sub image in the image
      * @param y location of left top corner of the sub image in the image
-     * @return the pixel in the original image at location(x,y)
+     * @return the rgb value of the pixel in the original image at location(x,y)
      */
     @Override
-    public Color getPixel(int x, int y) {
-        Color color = image.getPixel(y, x);
-        return new Color(color.getRed(), color.getGreen(), color.getBlue());
+    public int getRGB(int x, int y) {
+        return image.getRGB(y, x);
     }
 
     /**
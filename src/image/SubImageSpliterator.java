@@ -0,0 +1,70 @@
+package image;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A package-private class of the package image.
+ * Splittable traversal of the square subImages of an image, by order (first row of subImages, second row
+ * and so on).
+ */
+class SubImageSpliterator implements Spliterator<Image> {
+    private static final int CHARACTERISTICS = ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+
+    private final Image image;
+    private final int edgeLength;
+    private final int subImagesInRow;
+    private int index;
+    private final int end;
+
+    /**
+     * constructs a spliterator of all the subImages of the image
+     *
+     * @param image      image to traverse its subImages
+     * @param edgeLength width and height of each subImage
+     */
+    SubImageSpliterator(Image image, int edgeLength) {
+        this(image, edgeLength, 0, (image.getWidth() / edgeLength) * (image.getHeight() / edgeLength));
+    }
+
+    private SubImageSpliterator(Image image, int edgeLength, int index, int end) {
+        this.image = image;
+        this.edgeLength = edgeLength;
+        this.subImagesInRow = image.getWidth() / edgeLength;
+        this.index = index;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Image> action) {
+        if (index >= end) {
+            return false;
+        }
+        int x = (index % subImagesInRow) * edgeLength;
+        int y = (index / subImagesInRow) * edgeLength;
+        action.accept(new SubImage(image, x, y, edgeLength));
+        index++;
+        return true;
+    }
+
+    @Override
+    public Spliterator<Image> trySplit() {
+        int middle = (index + end) >>> 1;
+        if (middle <= index) {
+            return null;
+        }
+        SubImageSpliterator prefix = new SubImageSpliterator(image, edgeLength, index, middle);
+        index = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+}
@@ -0,0 +1,87 @@
+package ascii_output;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Round trip of the format of BinaryAsciiOutput through BinaryAsciiGrid: a grid that is written is read
+ * back with the same chars, colors and header, by both the streaming output and BinaryAsciiOutput.write.
+ * Run with java -cp <classes of src and test> ascii_output.BinaryAsciiGridTest, it exits with status 1 on
+ * the first failure.
+ */
+public class BinaryAsciiGridTest {
+    private static final String FONT = "Courier New";
+    private static final int RESOLUTION = 64;
+
+    public static void main(String[] args) throws IOException {
+        File dir = Files.createTempDirectory("grid-test").toFile();
+        try {
+            Random random = new Random(1);
+            /*chars below 256 are looked up in a table, the others are searched*/
+            char[] charSet = {' ', '.', '#', '0', '\u2588', '\u00e9', '\u4e00'};
+            char[][] chars = new char[37][53];
+            int[][] colors = new int[37][53];
+            for (int y = 0; y < chars.length; y++) {
+                for (int x = 0; x < chars[y].length; x++) {
+                    chars[y][x] = charSet[random.nextInt(charSet.length)];
+                    colors[y][x] = random.nextInt(1 << 24);
+                }
+            }
+            File streamed = new File(dir, "streamed.grid");
+            new BinaryAsciiOutput(streamed.getPath(), charSet, FONT, RESOLUTION, true).output(chars, colors);
+            check(BinaryAsciiGrid.open(streamed.getPath()), chars, colors, charSet);
+            File written = new File(dir, "written.grid");
+            BinaryAsciiOutput.write(written.getPath(), chars, null, charSet, FONT, RESOLUTION);
+            check(BinaryAsciiGrid.open(written.getPath()), chars, null, charSet);
+            File uncolored = new File(dir, "uncolored.grid");
+            new BinaryAsciiOutput(uncolored.getPath(), charSet, FONT, RESOLUTION, false).output(chars, null);
+            check(BinaryAsciiGrid.open(uncolored.getPath()), chars, null, charSet);
+            try {
+                new BinaryAsciiOutput(new File(dir, "font.grid").getPath(), charSet,
+                        "f".repeat(Short.MAX_VALUE + 1), RESOLUTION, false);
+                fail("a font name longer than its size field was accepted");
+            } catch (IllegalArgumentException expected) {
+                /*its size is written in a short*/
+            }
+            try {
+                BinaryAsciiOutput.write(new File(dir, "missing/dir.grid").getPath(), chars, null, charSet,
+                        FONT, RESOLUTION);
+                fail("a failure to write was not reported");
+            } catch (IOException expected) {
+                /*reported to the caller, as the cache of conversions needs*/
+            }
+            System.out.println("BinaryAsciiGridTest passed");
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private static void check(BinaryAsciiGrid grid, char[][] chars, int[][] colors, char[] charSet) {
+        if (grid.getNumRows() != chars.length || grid.getNumCols() != chars[0].length
+                || grid.getResolution() != RESOLUTION || !FONT.equals(grid.getFontName())
+                || !Arrays.equals(grid.getCharSet(), charSet) || grid.hasColors() != (colors != null)) {
+            fail("the header was not read back");
+        }
+        if (!Arrays.deepEquals(grid.toChars(), chars)) {
+            fail("the chars were not read back");
+        }
+        for (int y = 0; y < chars.length; y++) {
+            for (int x = 0; x < chars[y].length; x++) {
+                if (grid.charAt(y, x) != chars[y][x] || colors != null && grid.colorAt(y, x) != colors[y][x]) {
+                    fail("the char or color at " + y + "," + x + " was not read back");
+                }
+            }
+        }
+    }
+
+    private static void fail(String message) {
+        System.err.println("BinaryAsciiGridTest failed: " + message);
+        System.exit(1);
+    }
+}